@@ -1,24 +1,81 @@
+import db.BatchRunner;
 import db.CommandInvoker;
+import db.CommandServer;
 import db.Database;
+import db.SessionRunner;
 import commands.*;
+import exceptions.DatabaseException;
+import types.Parallel;
+import types.Storage;
 
 import javax.xml.bind.JAXBException;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
     public static void main(String[] args) {
-        if (args.length != 1)
+        boolean mapped = false;
+        Storage storage = Storage.OBJECTS;
+        int walSync = 0;
+        int checkpointSeconds = 0;
+        int checkpointDirty = 0;
+        List<Path> scripts = new ArrayList<>();
+        InetSocketAddress serverAddress = null;
+        List<Path> sessionScripts = new ArrayList<>();
+        int sessionCopies = 1;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            if (args[i].equals("--mmap"))
+                mapped = true;
+            else if (args[i].equals("--columnar"))
+                storage = Storage.COLUMNS;
+            else if (args[i].equals("--offheap"))
+                storage = Storage.OFF_HEAP;
+            else if (args[i].equals("--wal"))
+                walSync = 1;
+            else if (args[i].startsWith("--wal="))
+                walSync = parsePositive(args[i].substring("--wal=".length()));
+            else if (args[i].startsWith("--batch=") && args[i].length() > "--batch=".length())
+                scripts.add(Paths.get(args[i].substring("--batch=".length())));
+            else if (args[i].startsWith("--checkpoint="))
+                checkpointSeconds = parsePositive(args[i].substring("--checkpoint=".length()));
+            else if (args[i].startsWith("--checkpoint-dirty="))
+                checkpointDirty = parsePositive(args[i].substring("--checkpoint-dirty=".length()));
+            else if (args[i].startsWith("--session=") && args[i].length() > "--session=".length())
+                sessionScripts.add(Paths.get(args[i].substring("--session=".length())));
+            else if (args[i].startsWith("--sessions="))
+                sessionCopies = parsePositive(args[i].substring("--sessions=".length()));
+            else if (args[i].startsWith("--server="))
+                serverAddress = parseAddress(args[i].substring("--server=".length()));
+            else if (args[i].startsWith("--parallel-threshold="))
+                Parallel.setThreshold(parsePositive(args[i].substring("--parallel-threshold=".length())));
+            else
+                printUsage();
+        }
+        int modes = (scripts.isEmpty() ? 0 : 1) + (sessionScripts.isEmpty() ? 0 : 1) + (serverAddress != null ? 1 : 0);
+        if (args.length - i != 1 || modes > 1)
             printUsage();
 
         try {
-            Database db = new Database(args[0]);
-            CommandInvoker ci = CommandInvoker.getGlobal();
+            Database db = new Database(args[i], mapped, storage);
+            if (walSync > 0)
+                db.openLog(walSync);
+            if (checkpointSeconds > 0 || checkpointDirty > 0)
+                db.startCheckpointer(checkpointSeconds * 1000L, checkpointDirty);
+            CommandInvoker ci = new CommandInvoker(System.in);
             ci.register(new AddCommand(db));
             ci.register(new AddIfMaxCommand(db));
             ci.register(new ClearCommand(db));
             ci.register(new EstablishmentDatesCommand(db));
-            ci.register(new ExecuteCommand(db));
+            ci.register(new EstablishedBetweenCommand(db));
             ci.register(new ExitCommand(db));
+            ci.register(new ExportCommand(db));
+            ci.register(new ImportCommand(db));
             ci.register(new InfoCommand(db));
             ci.register(new ParticipantsAvgCommand(db));
             ci.register(new ParticipantsSumCommand(db));
@@ -27,7 +84,20 @@ public class Main {
             ci.register(new SaveCommand(db));
             ci.register(new ShowCommand(db));
             ci.register(new UpdateCommand(db));
-            ci.run();
+            if (serverAddress != null) {
+                serve(ci, db, serverAddress);
+                return;
+            }
+            boolean completed = true;
+            if (!sessionScripts.isEmpty())
+                completed = new SessionRunner(ci, db).run(sessionScripts, sessionCopies);
+            else if (!scripts.isEmpty())
+                completed = new BatchRunner(ci).run(scripts);
+            else
+                ci.run();
+            db.close();
+            if (!completed)
+                System.exit(1);
         } catch (IOException e) {
             System.out.println("Ошибка: " + e.getMessage());
         } catch (JAXBException e) {
@@ -37,9 +107,64 @@ public class Main {
         }
     }
 
+    // Выполнение команд сервером до завершения программы
+    private static void serve(CommandInvoker ci, Database db, InetSocketAddress address) throws IOException {
+        CommandServer server = new CommandServer(ci, address);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                db.close();
+            } catch (DatabaseException e) {
+                System.out.println(e.getMessage());
+            }
+        }));
+        System.out.println("Сервер принимает подключения: " + server.address());
+        server.run();
+    }
+
+    // Разбор адреса сервера вида [HOST:]PORT; без HOST - только локальные подключения
+    private static InetSocketAddress parseAddress(String value) {
+        int colon = value.lastIndexOf(':');
+        int port = parsePositive(value.substring(colon + 1));
+        if (port > 0xFFFF)
+            printUsage();
+        if (colon < 0)
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        return new InetSocketAddress(value.substring(0, colon), port);
+    }
+
+    // Разбор положительного целого параметра
+    private static int parsePositive(String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0)
+                return result;
+        } catch (NumberFormatException ignored) {
+        }
+        printUsage();
+        return 0;
+    }
+
     private static void printUsage()
     {
         System.out.println("Программа принимает на вход ровно один аргумент - путь до файла.");
+        System.out.println("Перед ним могут быть указаны параметры:");
+        System.out.println("  --mmap   отображать двоичный снимок (*.bin) в память без загрузки групп");
+        System.out.println("  --columnar  хранить группы в памяти по столбцам");
+        System.out.println("  --offheap  хранить группы вне кучи (объем ограничен -XX:MaxDirectMemorySize)");
+        System.out.println("  --wal[=N]  вести журнал изменений, сбрасывая его на диск каждые N записей (по умолчанию 1)");
+        System.out.println("  --batch=FILE  выполнить скрипт в пакетном режиме вместо чтения команд из консоли " +
+                "(можно указать несколько раз)");
+        System.out.println("  --checkpoint=S  сохранять коллекцию в фоновом потоке, если с прошлого сохранения прошло S секунд");
+        System.out.println("  --checkpoint-dirty=N  сохранять коллекцию в фоновом потоке после каждых N изменений");
+        System.out.println("  --session=FILE  выполнить скрипт в отдельном сеансе; сеансы выполняются одновременно " +
+                "(можно указать несколько раз)");
+        System.out.println("  --sessions=N  выполнить каждый скрипт --session в N сеансах (по умолчанию 1)");
+        System.out.println("  --server=[HOST:]PORT  выполнять команды клиентов по TCP вместо чтения из консоли " +
+                "(без HOST - только с локального компьютера); клиентам доступны все команды, кроме " +
+                String.join(", ", CommandServer.LOCAL_COMMANDS));
+        System.out.println("  --parallel-threshold=N  выполнять параллельно сортировки и обходы от N групп " +
+                "(по умолчанию " + Parallel.DEFAULT_THRESHOLD + ")");
         System.out.println("Пожалуйста, проверьте верность аргументов и повторите запуск.");
         System.exit(1);
     }
@@ -33,4 +33,12 @@ public class AddCommand extends AbstractCommand {
         database.add(mb);
         System.out.println("Добавлен элемент:\n" + mb);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int inputLines() {
+        return MusicBand.READER_LINES;
+    }
 }
@@ -39,4 +39,12 @@ public class AddIfMaxCommand extends AbstractCommand {
         else
             System.out.println("Ничего не добавлено");
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int inputLines() {
+        return MusicBand.READER_LINES;
+    }
 }
@@ -27,4 +27,14 @@ public interface Command {
      * @throws IOException при ошибках ввода команды
      */
     void execute(CheckedReader reader, String... args) throws IOException;
+
+    /**
+     * Количество строк, которые команда читает из потока ввода после
+     * своей строки (например, поля группы). Используется пакетным режимом
+     * для разбора скриптов до их выполнения.
+     * @return количество строк ввода команды
+     */
+    default int inputLines() {
+        return 0;
+    }
 }
@@ -0,0 +1,47 @@
+package commands;
+
+import db.Database;
+import io.CheckedReader;
+import exceptions.CommandException;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Команда "filter_by_establishment_date from to".
+ * Имеет два аргумента - начало и конец периода в формате ГГГГ-ММ-ДД.
+ * Выводит группы, основанные в заданный период (включая его границы),
+ * в порядке возрастания даты основания.
+ */
+public class EstablishedBetweenCommand extends AbstractCommand {
+    /**
+     * Создание команды "filter_by_establishment_date"
+     * @param db база данных
+     */
+    public EstablishedBetweenCommand(Database db) {
+        super("filter_by_establishment_date",
+                "filter_by_establishment_date from to - " +
+                        "вывести элементы, значение поля establishmentDate которых находится между from и to", db);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(CheckedReader reader, String... args) throws IOException {
+        if (args.length != 2)
+            throw new CommandException("Ошибка: команда '" + name() + "' должна иметь два аргумента.");
+
+        if (database.showEstablishedBetween(parseDate(args[0]), parseDate(args[1])) == 0)
+            System.out.println("Групп, основанных в этот период, нет.");
+    }
+
+    private static LocalDate parseDate(String value) throws CommandException {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new CommandException("Неверный формат даты '" + value + "', ожидается ГГГГ-ММ-ДД.");
+        }
+    }
+}
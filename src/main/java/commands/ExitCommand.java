@@ -1,6 +1,7 @@
 package commands;
 
 import db.Database;
+import exceptions.DatabaseException;
 import io.CheckedReader;
 
 /**
@@ -22,6 +23,11 @@ public class ExitCommand extends AbstractCommand {
      */
     @Override
     public void execute(CheckedReader reader, String... args) {
+        try {
+            database.close();
+        } catch (DatabaseException e) {
+            System.out.println(e.getMessage());
+        }
         System.exit(0);
     }
 }
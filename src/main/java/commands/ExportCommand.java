@@ -0,0 +1,49 @@
+package commands;
+
+import db.Database;
+import exceptions.*;
+import io.BandSnapshot;
+import io.CheckedReader;
+
+import javax.xml.bind.JAXBException;
+import java.io.IOException;
+
+/**
+ * Команда "export file_name".
+ * Имеет один аргумент file_name - имя файла.
+ * Сохраняет данные коллекции в указанный файл. Формат файла
+ * определяется расширением: {@value BandSnapshot#EXTENSION} - двоичный, иначе - XML.
+ */
+public class ExportCommand extends AbstractCommand {
+    /**
+     * Создание команды "export"
+     * @param db база данных
+     */
+    public ExportCommand(Database db) {
+        super("export",
+                "export file_name - сохранить коллекцию в указанный файл\n" +
+                        "             (расширение " + BandSnapshot.EXTENSION + " - двоичный формат, иначе - XML)",
+                db);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(CheckedReader reader, String... args) throws IOException {
+        if (args.length != 1)
+            throw new CommandException("Ошибка: команда '" + name() + "' должна иметь один аргумент.");
+
+        try {
+            database.export(args[0]);
+            System.out.println("Коллекция сохранена в файл: " + args[0]);
+        } catch (DatabaseException e) {
+            System.out.println(e.getMessage());
+        }
+        catch (JAXBException e) {
+            System.out.println("Внутренняя ошибка работы с JAXB");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package commands;
+
+import db.Database;
+import exceptions.CommandException;
+import io.BandCsv;
+import io.CheckedReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+/**
+ * Команда "import file_name".
+ * Имеет один аргумент file_name - имя файла CSV.
+ * Добавляет в коллекцию группы, описанные в файле (см. {@link BandCsv}).
+ * Строки файла разбираются параллельно, а группы добавляются в коллекцию
+ * одной операцией. Если хотя бы одна строка содержит ошибку, ни одна
+ * группа не добавляется.
+ */
+public class ImportCommand extends AbstractCommand {
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    /**
+     * Создание команды "import"
+     * @param db база данных
+     */
+    public ImportCommand(Database db) {
+        super("import",
+                "import file_name - добавить в коллекцию группы из файла CSV с полями\n" +
+                        "             " + BandCsv.HEADER,
+                db);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(CheckedReader reader, String... args) throws IOException {
+        if (args.length != 1)
+            throw new CommandException("Ошибка: команда '" + name() + "' должна иметь один аргумент.");
+
+        Path path = Paths.get(args[0]);
+        if (Files.notExists(path))
+            throw new CommandException("Файл не существует: " + args[0]);
+        if (!Files.isReadable(path))
+            throw new CommandException("Невозможно прочитать файл: " + args[0]);
+
+        long start = System.nanoTime();
+        BandCsv csv;
+        try {
+            csv = BandCsv.read(path, LocalDate.now());
+        } catch (IOException e) {
+            throw new CommandException("Невозможно прочитать файл: " + args[0]);
+        }
+        if (!csv.errors().isEmpty()) {
+            csv.errors().stream().limit(MAX_REPORTED_ERRORS).forEach(System.out::println);
+            if (csv.errors().size() > MAX_REPORTED_ERRORS)
+                System.out.println("... всего ошибок: " + csv.errors().size());
+            System.out.println("Группы не импортированы.");
+            return;
+        }
+        int added = database.addAll(csv.bands());
+        System.out.printf("Импортировано групп: %d за %.3f с%n", added, (System.nanoTime() - start) / 1e9);
+    }
+}
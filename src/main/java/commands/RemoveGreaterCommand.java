@@ -34,4 +34,12 @@ public class RemoveGreaterCommand extends AbstractCommand {
         MusicBand mb = MusicBand.fromReader(reader);
         System.out.println("Удалено элементов: " + database.removeGreater(mb));
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int inputLines() {
+        return MusicBand.READER_LINES;
+    }
 }
@@ -2,14 +2,16 @@ package commands;
 
 import db.Database;
 import io.CheckedReader;
+import io.OutputSink;
 import exceptions.CommandException;
 
 import java.io.IOException;
 
 /**
- * Команда "show".
- * Не имеет аргументов.
- * Вывод на экран всех групп.
+ * Команда "show [limit [offset]]".
+ * Может иметь до двух аргументов: наибольшее количество выводимых групп
+ * и количество пропускаемых групп.
+ * Вывод на экран всех групп либо их части (постранично).
  */
 public class ShowCommand extends AbstractCommand {
     /**
@@ -17,7 +19,8 @@ public class ShowCommand extends AbstractCommand {
      * @param db база данных
      */
     public ShowCommand(Database db) {
-        super("show", "show - вывести в стандартный поток вывода все элементы коллекции в строковом представлении", db);
+        super("show", "show [limit [offset]] - вывести в стандартный поток вывода все элементы коллекции " +
+                "(или limit элементов, начиная с offset) в строковом представлении", db);
     }
 
     /**
@@ -25,8 +28,26 @@ public class ShowCommand extends AbstractCommand {
      */
     @Override
     public void execute(CheckedReader reader, String... args) throws IOException {
-        if (args.length > 0)
-            throw new CommandException("Ошибка: команда '" + name() + "' не имеет аргументов");
-        database.show();
+        if (args.length > 2)
+            throw new CommandException("Ошибка: команда '" + name() + "' имеет не более двух аргументов");
+        if (args.length == 0) {
+            database.show();
+            return;
+        }
+
+        int limit = parseCount(args[0]);
+        int offset = args.length > 1 ? parseCount(args[1]) : 0;
+        int shown = database.show(offset, limit);
+        OutputSink.out().println("Показано элементов: " + shown + " из " + database.size());
+    }
+
+    private static int parseCount(String value) throws CommandException {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= 0)
+                return result;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new CommandException("Недопустимое значение: " + value);
     }
 }
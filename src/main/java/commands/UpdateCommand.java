@@ -30,19 +30,22 @@ public class UpdateCommand extends AbstractCommand {
             throw new CommandException("Ошибка: команда '" + name() + "' должна иметь один аргумент.");
 
         Integer id = Integer.valueOf(args[0]);
-        MusicBand found = database.find(id);
-        if (found != null) {
-            MusicBand tmp = MusicBand.fromReader(reader);
-            found.setBestAlbum(tmp.getBestAlbum());
-            found.setCoordinates(tmp.getCoordinates());
-            found.setEstablishmentDate(tmp.getEstablishmentDate());
-            found.setGenre(tmp.getGenre());
-            found.setName(tmp.getName());
-            found.setNumberOfParticipants(tmp.getNumberOfParticipants());
-            System.out.println("Обновлен элемент:\n" + found);
-        }
-        else {
+        // Группа может быть удалена другим сеансом, пока вводятся новые значения,
+        // поэтому ее наличие проверяется еще раз при обновлении
+        MusicBand updated = null;
+        if (database.find(id) != null)
+            updated = database.update(id, MusicBand.fromReader(reader));
+        if (updated != null)
+            System.out.println("Обновлен элемент:\n" + updated);
+        else
             System.out.println("Элемент с id=" + id + " отсутствует в коллекции.");
-        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int inputLines() {
+        return MusicBand.READER_LINES;
     }
 }
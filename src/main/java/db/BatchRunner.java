@@ -0,0 +1,178 @@
+package db;
+
+import commands.Command;
+import exceptions.CommandException;
+import exceptions.ValueException;
+import io.CommandTokenizer;
+import io.OutputSink;
+import io.ScriptReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Пакетное (неинтерактивное) выполнение скриптов.</p>
+ * <p>В отличие от {@code execute_script}, скрипты сначала полностью
+ * разбираются: каждая строка команды разбивается на аргументы, команда
+ * ищется среди зарегистрированных, а строки ввода команды (поля группы)
+ * откладываются в общий список. Вложенные {@code execute_script}
+ * разворачиваются при разборе. Если хотя бы одна команда не прошла
+ * проверку, ни одна команда не выполняется.</p>
+ * <p>Затем команды выполняются подряд без приглашений к вводу и повторного
+ * разбора. На время выполнения {@code System.out} направляется в буфер
+ * общего вывода {@link OutputSink} без автоматического сброса. По окончании
+ * выводится количество выполненных команд и их пропускная способность.</p>
+ * <p>В отличие от {@code execute_script}, команда {@code update} всегда
+ * имеет строки ввода, даже если группы с указанным id нет.</p>
+ */
+public class BatchRunner {
+    private static final String EXECUTE_SCRIPT = "execute_script";
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final CommandInvoker invoker;
+    private final List<Step> steps = new ArrayList<>();
+    private final List<String> input = new ArrayList<>();
+    private final List<String> errors = new ArrayList<>();
+    private final CommandTokenizer tokenizer = new CommandTokenizer();
+
+    // Разобранная команда скрипта
+    private static final class Step {
+        final Command command;
+        final String[] args;
+        final int input;        // номер первой строки ввода команды
+        final Path script;
+        final int line;
+
+        Step(Command command, String[] args, int input, Path script, int line) {
+            this.command = command;
+            this.args = args;
+            this.input = input;
+            this.script = script;
+            this.line = line;
+        }
+
+        String location() {
+            return script + ":" + line;
+        }
+    }
+
+    /**
+     * @param invoker объект, команды которого выполняются
+     */
+    public BatchRunner(CommandInvoker invoker) {
+        this.invoker = invoker;
+    }
+
+    /**
+     * Разбор и выполнение скриптов.
+     * @param scripts пути к скриптам в порядке выполнения
+     * @return {@code true}, если скрипты прошли проверку и были выполнены
+     * @throws IOException при ошибках чтения скриптов или выполнения команд
+     */
+    public boolean run(List<Path> scripts) throws IOException {
+        long parseStart = System.nanoTime();
+        for (Path script : scripts)
+            parse(script.normalize().toAbsolutePath(), new ArrayList<>());
+        if (!errors.isEmpty()) {
+            errors.stream().limit(MAX_REPORTED_ERRORS).forEach(System.out::println);
+            if (errors.size() > MAX_REPORTED_ERRORS)
+                System.out.println("... всего ошибок: " + errors.size());
+            System.out.println("Скрипты не выполнены.");
+            return false;
+        }
+        long parsed = System.nanoTime() - parseStart;
+
+        OutputSink sink = OutputSink.out();
+        PrintStream console = System.out;
+        PrintStream buffered = new PrintStream(sink.stream(), false);
+        Thread flushOnExit = new Thread(buffered::flush);
+        Runtime.getRuntime().addShutdownHook(flushOnExit);
+        System.setOut(buffered);
+        int failed = 0;
+        long start = System.nanoTime();
+        try {
+            ScriptReader reader = new ScriptReader(input);
+            for (Step step : steps) {
+                reader.seek(step.input);
+                try {
+                    step.command.execute(reader, step.args);
+                } catch (CommandException e) {
+                    System.out.println("Ошибка: " + e.getMessage() + " (" + step.location() + ")");
+                    failed++;
+                } catch (IllegalArgumentException e) {
+                    // ValueException уже выведено при чтении значения
+                    System.out.println("Ошибка: команда не выполнена: " + step.location()
+                            + (e instanceof ValueException ? "" : ": " + e.getMessage()));
+                    failed++;
+                }
+            }
+        } finally {
+            buffered.flush();
+            System.setOut(console);
+            Runtime.getRuntime().removeShutdownHook(flushOnExit);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Выполнено команд: %d (с ошибками: %d), разбор: %.3f с, выполнение: %.3f с, %.0f команд/с%n",
+                steps.size(), failed, parsed / 1e9, elapsed / 1e9,
+                elapsed > 0 ? steps.size() * 1e9 / elapsed : 0.0);
+        return true;
+    }
+
+    // Разбор скрипта; trace - стек разбираемых скриптов
+    private void parse(Path script, List<Path> trace) {
+        if (trace.contains(script)) {
+            errors.add("Ошибка: рекурсивное выполнение скриптов не поддерживается: " + script);
+            return;
+        }
+        if (!Files.isReadable(script)) {
+            errors.add("Ошибка: Невозможно прочитать файл: " + script);
+            return;
+        }
+        trace.add(script);
+        try (BufferedReader in = Files.newBufferedReader(script, Charset.defaultCharset())) {
+            int lineNo = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (!tokenizer.tokenize(line))
+                    continue;
+                String name = tokenizer.name();
+                if (name.equals(EXECUTE_SCRIPT)) {
+                    if (tokenizer.args().length != 1)
+                        errors.add(script + ":" + lineNo + ": команда '" + EXECUTE_SCRIPT
+                                + "' должна иметь один аргумент.");
+                    else
+                        parse(Paths.get(tokenizer.args()[0]).normalize().toAbsolutePath(), trace);
+                    continue;
+                }
+                Command command = invoker.command(name);
+                if (command == null) {
+                    errors.add(script + ":" + lineNo + ": Неизвестная команда: " + name);
+                    continue;
+                }
+                steps.add(new Step(command, tokenizer.copyArgs(), input.size(), script, lineNo));
+                for (int i = 0; i < command.inputLines(); i++) {
+                    String value = in.readLine();
+                    if (value == null) {
+                        errors.add(script + ":" + lineNo + ": Неожиданный конец скрипта в данных команды "
+                                + name);
+                        break;
+                    }
+                    lineNo++;
+                    input.add(value);
+                }
+            }
+        } catch (IOException e) {
+            errors.add("Ошибка: Невозможно прочитать файл: " + script);
+        } finally {
+            trace.remove(trace.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package db;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Планировщик фонового сохранения коллекции.</p>
+ * <p>После каждого изменения коллекции база данных сообщает об этом
+ * планировщику. Когда накоплено заданное количество изменений или с момента
+ * последнего сохранения прошел заданный интервал, база данных снимает копию
+ * коллекции в потоке команд, а ее запись в файл выполняется в отдельном
+ * потоке, пока команды продолжают выполняться. Одновременно выполняется
+ * не более одного сохранения.</p>
+ * <p>Если задан интервал, он проверяется также таймером в отдельном потоке,
+ * так что несохраненные изменения записываются и после того, как изменения
+ * коллекции прекратились. Таймер не занимает поток записи снимка: пока он
+ * ждет блокировку базы данных, выполняющееся сохранение может завершиться.</p>
+ * <p>Снятие копии - копирование ссылок на группы (или столбцов хранилища),
+ * то есть O(n) под исключительной блокировкой; сама запись в файл
+ * выполняется без блокировки.</p>
+ * <p>Планировщик учитывает время, на которое снятие копии задерживает
+ * поток команд, и ошибки фоновых сохранений.</p>
+ */
+class Checkpointer implements Closeable {
+    /**
+     * Фоновая запись снимка коллекции.
+     */
+    interface Task {
+        void run() throws Exception;
+    }
+
+    private final long intervalNanos;   // 0, если сохранение по времени выключено
+    private final int dirtyThreshold;   // 0, если сохранение по числу изменений выключено
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> daemon(r, "checkpointer"));
+    private final ScheduledExecutorService timer;      // null, если сохранение по времени выключено
+    private Future<?> pending;
+
+    // Состояние и статистика потока команд
+    private int dirty = 0;
+    private long lastCheckpoint = System.nanoTime();
+    private int started = 0;
+    private long lastStall = 0;
+    private long maxStall = 0;
+    private long totalStall = 0;
+
+    // Статистика потока сохранения
+    private volatile int failed = 0;
+    private volatile String lastError;
+
+    /**
+     * @param intervalMillis интервал между сохранениями в миллисекундах, 0 - не сохранять по времени
+     * @param dirtyThreshold количество изменений, после которого выполняется сохранение,
+     *                       0 - не сохранять по количеству изменений
+     * @param tick действие таймера, выполняемое каждые {@code intervalMillis} миллисекунд
+     *             (база данных проверяет {@link #due()} и при необходимости начинает сохранение)
+     */
+    Checkpointer(long intervalMillis, int dirtyThreshold, Runnable tick) {
+        if (intervalMillis < 0 || dirtyThreshold < 0 || intervalMillis == 0 && dirtyThreshold == 0)
+            throw new IllegalArgumentException("Не задан интервал или количество изменений для сохранения");
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.dirtyThreshold = dirtyThreshold;
+        if (intervalMillis > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "checkpoint-timer"));
+            timer.scheduleWithFixedDelay(tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        else {
+            timer = null;
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Учет изменения коллекции.
+     * @return {@code true}, если пора начать фоновое сохранение
+     */
+    boolean mutated() {
+        dirty++;
+        if (pending != null && !pending.isDone())
+            return false;
+        return dirtyThreshold > 0 && dirty >= dirtyThreshold || intervalElapsed();
+    }
+
+    /**
+     * Проверка по таймеру.
+     * @return {@code true}, если есть несохраненные изменения, с последнего
+     *          сохранения прошел интервал и фоновое сохранение не выполняется
+     */
+    boolean due() {
+        if (dirty == 0 || pending != null && !pending.isDone())
+            return false;
+        return intervalElapsed();
+    }
+
+    private boolean intervalElapsed() {
+        return intervalNanos > 0 && System.nanoTime() - lastCheckpoint >= intervalNanos;
+    }
+
+    /**
+     * Учет ошибки, не позволившей начать сохранение по таймеру.
+     * @param e ошибка
+     */
+    void failed(Exception e) {
+        failed++;
+        lastError = e.getMessage();
+    }
+
+    /**
+     * Запуск фонового сохранения.
+     * @param task запись снятой копии коллекции
+     * @param stallStart момент начала снятия копии ({@link System#nanoTime()})
+     */
+    void start(Task task, long stallStart) {
+        pending = executor.submit(() -> {
+            try {
+                task.run();
+                lastError = null;
+            } catch (Exception e) {
+                failed++;
+                lastError = e.getMessage();
+            }
+        });
+        long now = System.nanoTime();
+        long stall = now - stallStart;
+        started++;
+        lastStall = stall;
+        maxStall = Math.max(maxStall, stall);
+        totalStall += stall;
+        dirty = 0;
+        lastCheckpoint = now;
+    }
+
+    /**
+     * Ожидание завершения выполняющегося фонового сохранения.
+     */
+    void await() {
+        if (pending == null)
+            return;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                pending.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                break;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Учет синхронного сохранения коллекции.
+     */
+    void saved() {
+        dirty = 0;
+        lastCheckpoint = System.nanoTime();
+    }
+
+    /**
+     * Остановка потока сохранения после завершения текущего сохранения.
+     */
+    @Override
+    public void close() {
+        if (timer != null)
+            timer.shutdownNow();
+        executor.shutdown();
+    }
+
+    /**
+     * Строковое представление в виде настроек и статистики сохранений.
+     * @return строковое представление
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (intervalNanos > 0)
+            sb.append("каждые ").append(TimeUnit.NANOSECONDS.toSeconds(intervalNanos)).append(" с");
+        if (intervalNanos > 0 && dirtyThreshold > 0)
+            sb.append(" или ");
+        if (dirtyThreshold > 0)
+            sb.append("каждые ").append(dirtyThreshold).append(" изменений");
+        sb.append("; запущено: ").append(started)
+                .append(", ошибок: ").append(failed)
+                .append(", несохраненных изменений: ").append(dirty);
+        if (pending != null && !pending.isDone())
+            sb.append(", выполняется");
+        sb.append("\n  задержка команд при снятии копии: последняя ").append(millis(lastStall))
+                .append(" мс, максимальная ").append(millis(maxStall))
+                .append(" мс, всего ").append(millis(totalStall)).append(" мс");
+        String error = lastError;
+        if (error != null)
+            sb.append("\n  ошибка последнего сохранения: ").append(error);
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+}
@@ -2,34 +2,57 @@ package db;
 
 import commands.*;
 import io.CheckedReader;
+import io.CommandTokenizer;
+import io.OutputSink;
 import exceptions.CommandException;
+import exceptions.ValueException;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.LinkedList;
-import java.util.Stack;
+import java.util.Set;
 import java.util.TreeMap;
 
 /**
- * Класс регистрации и выполнения команд над базой данных.
+ * <p>Класс регистрации и выполнения команд над базой данных.
  * Команды регистрируются с помощью {@link #register(Command) registre}.
  * Цикл обработки и выполнения команд запускается методом {@link #run() run}.
  * Команды считываются из входного потока с помощью
- * {@link CheckedReader}.
+ * {@link CheckedReader}.</p>
+ * <p>Объект, созданный конструктором, читает команды из консоли.
+ * Метод {@link #session(CheckedReader, Path) session} создает из него сеанс -
+ * объект со своим потоком ввода, историей команд и стеком выполняемых скриптов,
+ * выполняющий те же команды над той же базой данных. Сеансы могут работать
+ * одновременно в разных потоках: согласованность коллекции при этом
+ * обеспечивает {@link Database}. Команда {@code exit} в сеансе
+ * завершает только сеанс.</p>
  */
 public class CommandInvoker implements Closeable {
     private final TreeMap<String, Command> commands;
     private final LinkedList<String> history;
     private final CheckedReader reader;
-
-    private static final CommandInvoker global = new CommandInvoker(System.in);
-    private static final Stack<Path> scriptTrace = new Stack<>();
+    private final CommandTokenizer tokenizer = new CommandTokenizer();
+    private final Scope scope;
+    private final Path script;          // Скрипт объекта, созданного createFromThis, иначе null
 
     private static final String CMD_HINT = "Введите 'help' для справки о доступных командах\n";
     private static final int HISTORY_ENTRIES = 14;
 
-    // Команды help и history существуют только в контексте CommandInvoker
+    // Состояние сеанса, общее для него и вложенных скриптов
+    private static final class Scope {
+        final Deque<Path> scriptTrace = new ArrayDeque<>();
+        final boolean session;
+        volatile boolean finished = false;
+
+        Scope(boolean session) {
+            this.session = session;
+        }
+    }
 
     // help
     private class HelpCommand extends AbstractCommand {
@@ -55,24 +78,70 @@ public class CommandInvoker implements Closeable {
         }
     }
 
-    // Создание нового CommandInvoker, читающего и исполняющего команды
-    // из указанного потока./
-    private CommandInvoker(InputStream in) {
-        commands = new TreeMap<>();
-        history = new LinkedList<>();
-        reader = new CheckedReader(in);
+    // execute_script file_name
+    private class ExecuteCommand extends AbstractCommand {
+        ExecuteCommand() {
+            super("execute_script", "execute_script file_name - считать и исполнить скрипт из указанного файла", null);
+        }
 
-        register(new HelpCommand());
-        register(new HistoryCommand());
+        @Override
+        public void execute(CheckedReader reader, String... args) throws IOException {
+            if (args.length != 1)
+                throw new CommandException("Ошибка: Команда '" + name() + "' должна иметь один аргумент.");
+
+            Path path = Paths.get(args[0]);
+            if (Files.notExists(path)) {
+                System.out.println("Ошибка: Файл не существует: " + args[0]);
+            }
+            else if (Files.isReadable(path)) {
+                try (CommandInvoker ci = createFromThis(path)) {
+                    ci.run();
+                } catch (ValueException e) {
+                    System.out.println("Ошибка: Выполнение скрипта прервано: " + path);
+                }
+            }
+            else {
+                System.out.println("Ошибка: Невозможно прочитать файл: " + args[0]);
+            }
+        }
+    }
+
+    // exit в сеансе
+    private class EndSessionCommand extends AbstractCommand {
+        EndSessionCommand() {
+            super("exit", "exit - завершить сеанс", null);
+        }
+
+        @Override
+        public void execute(CheckedReader reader, String... args) {
+            scope.finished = true;
+        }
     }
 
     /**
-     * Глобальный объект CommandInvoker.
-     * Работает с потоком {@code System.in}
-     * @return глобальный CommandInvoker
+     * Создание нового CommandInvoker, читающего и исполняющего команды
+     * из указанного потока (как правило, {@code System.in}).
+     * @param in поток ввода команд
      */
-    public static CommandInvoker getGlobal() {
-        return global;
+    public CommandInvoker(InputStream in) {
+        this(new CheckedReader(in), new Scope(false), null, null);
+    }
+
+    // Создание объекта, выполняющего команды parent (если он задан)
+    private CommandInvoker(CheckedReader reader, Scope scope, Path script, CommandInvoker parent) {
+        commands = new TreeMap<>();
+        history = new LinkedList<>();
+        this.reader = reader;
+        this.scope = scope;
+        this.script = script;
+
+        register(new HelpCommand());
+        register(new HistoryCommand());
+        register(new ExecuteCommand());
+        if (scope.session)
+            register(new EndSessionCommand());
+        if (parent != null)
+            parent.commands.forEach((k, v) -> register(v));
     }
 
     /**
@@ -86,15 +155,45 @@ public class CommandInvoker implements Closeable {
      */
     public CommandInvoker createFromThis(Path path) throws FileNotFoundException, CommandException {
         path = path.normalize().toAbsolutePath();
-        if (scriptTrace.search(path) < 0) {
-            scriptTrace.push(path);
-            CommandInvoker result = new CommandInvoker(new FileInputStream(path.toFile()));
-            commands.forEach((k, v) -> result.register(v));
+        if (!scope.scriptTrace.contains(path)) {
+            CommandInvoker result = new CommandInvoker(new CheckedReader(new FileInputStream(path.toFile())),
+                    scope, path, this);
+            scope.scriptTrace.push(path);
             return result;
         }
         throw new CommandException("Ошибка: рекурсивное выполнение скриптов не поддерживается: " + path);
     }
 
+    /**
+     * Создание сеанса: объекта с таким же набором команд, читающего команды
+     * из {@code reader}, со своей историей команд и стеком выполняемых скриптов.
+     * Сеансы, созданные из одного объекта, могут выполняться одновременно.
+     * @param reader поток ввода команд сеанса
+     * @param script скрипт, который выполняет сеанс, либо {@code null}
+     * @return новый сеанс
+     */
+    public CommandInvoker session(CheckedReader reader, Path script) {
+        return session(reader, script, Collections.emptySet());
+    }
+
+    /**
+     * Создание сеанса без некоторых команд (см. {@link #session(CheckedReader, Path)}).
+     * Например, сеансу удаленного клиента нельзя давать команды, работающие
+     * с файлами сервера.
+     * @param reader поток ввода команд сеанса
+     * @param script скрипт, который выполняет сеанс, либо {@code null}
+     * @param excluded названия команд, недоступных в сеансе
+     * @return новый сеанс
+     */
+    public CommandInvoker session(CheckedReader reader, Path script, Set<String> excluded) {
+        Scope scope = new Scope(true);
+        if (script != null)
+            scope.scriptTrace.push(script.normalize().toAbsolutePath());
+        CommandInvoker result = new CommandInvoker(reader, scope, null, this);
+        result.commands.keySet().removeAll(excluded);
+        return result;
+    }
+
     /**
      * Регистрация новой команды.
      * @param cmd команда
@@ -110,48 +209,62 @@ public class CommandInvoker implements Closeable {
     public void run() throws IOException {
         reader.printPrompt(CMD_HINT);
 
-        while (true) {
+        while (!scope.finished) {
             reader.printPrompt("> ");
 
-            String[] args = readCommand();
-            if (args == null)
+            String line = reader.readLine();
+            if (line == null)
                 break; // EOF
-            if (args.length == 0) {
+            if (!execute(line))
                 reader.printPrompt(CMD_HINT);
-                continue;
-            }
+        }
+    }
 
-            Command cmd = commands.get(args[0]);
-            if (cmd == null) {
-                System.out.println("Ошибка: Неизвестная команда: " + args[0]);
-                reader.printPrompt(CMD_HINT);
-                continue;
-            }
+    /**
+     * Выполнение строки команды. Строки ввода команды (например, поля группы)
+     * читаются из потока ввода объекта. Сообщения об ошибках выводятся
+     * в {@code System.out}.
+     * @param line строка команды
+     * @return {@code true}, если команда выполнена; {@code false}, если строка
+     *          пуста, команда неизвестна или завершилась ошибкой {@link CommandException}
+     * @throws IOException при ошибках ввода/вывода
+     * @throws ValueException при вводе некорректного значения вне интерактивного режима
+     */
+    public boolean execute(String line) throws IOException {
+        if (!tokenizer.tokenize(line))
+            return false;
 
-            if (history.size() == HISTORY_ENTRIES)
-                history.removeFirst();
-            history.addLast(cmd.name());
+        Command cmd = commands.get(tokenizer.name());
+        if (cmd == null) {
+            System.out.println("Ошибка: Неизвестная команда: " + tokenizer.name());
+            return false;
+        }
 
-            try {
-                cmd.execute(reader, Arrays.copyOfRange(args, 1, args.length));
-            }
-            catch (CommandException e) {
-                System.out.println("Ошибка: " + e.getMessage());
-                reader.printPrompt(CMD_HINT);
-            }
+        if (history.size() == HISTORY_ENTRIES)
+            history.removeFirst();
+        history.addLast(cmd.name());
+
+        try {
+            cmd.execute(reader, tokenizer.args());
+        } catch (CommandException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+            return false;
+        } finally {
+            OutputSink.out().flush();
         }
+        return true;
+    }
+
+    /**
+     * @return {@code true}, если сеанс завершен командой {@code exit}
+     */
+    public boolean finished() {
+        return scope.finished;
     }
 
-    // Читает команду из потока ввода и возвращает массив
-    // строк, первым элементом которого будет название команды,
-    // остальные - аргументы команды.
-    private String[] readCommand() throws IOException {
-        String line = reader.readLine();
-        if (line == null)
-            return null;
-        return Arrays.stream(line.split("\\s"))
-                .filter(s -> s.length() > 0)
-                .toArray(String[]::new);
+    // Зарегистрированная команда с заданным названием, либо null
+    Command command(String name) {
+        return commands.get(name);
     }
 
     /**
@@ -161,6 +274,7 @@ public class CommandInvoker implements Closeable {
     @Override
     public void close() throws IOException {
         reader.close();
-        scriptTrace.pop();
+        if (script != null)
+            scope.scriptTrace.pop();
     }
 }
@@ -0,0 +1,480 @@
+package db;
+
+import exceptions.ValueException;
+import io.OutputSink;
+import io.ScriptReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>Сервер, выполняющий команды {@link CommandInvoker} по TCP.</p>
+ * <p>Подключения обслуживаются неблокирующими циклами событий
+ * ({@link Selector}), по одному на ядро процессора, каждый в своем потоке.
+ * Первый цикл также принимает подключения и распределяет их между циклами
+ * по очереди. Каждое подключение - отдельный сеанс
+ * ({@link CommandInvoker#session(io.CheckedReader, java.nio.file.Path)})
+ * со своей историей команд. Команда выполняется в потоке цикла своего
+ * подключения; одновременный доступ к коллекции разграничивает
+ * {@link Database}.</p>
+ * <p>Клиентам доступны все команды, кроме работающих с файлами сервера
+ * по указанному клиентом пути: {@code execute_script}, {@code export}
+ * и {@code import} (см. {@link #LOCAL_COMMANDS}). Иначе любой клиент мог бы
+ * читать и перезаписывать файлы, доступные процессу сервера.</p>
+ * <p>Формат обмена. Запрос: длина текста (4 байта, старший байт первым)
+ * и текст в UTF-8 - строка команды и, через перевод строки, строки ее ввода
+ * (например, поля группы для {@code add}). Ответ: длина текста (4 байта),
+ * код результата (1 байт: 0 - команда выполнена, 1 - ошибка) и текст
+ * в UTF-8 - вывод команды. Клиент может отправить несколько запросов подряд,
+ * не дожидаясь ответов: ответы приходят в порядке запросов.</p>
+ * <p>Вывод команд через {@code System.out} и {@link OutputSink#out()}
+ * собирается в буфер ответа потока цикла (см. {@link OutputSink#bind(OutputSink)}),
+ * поэтому на время работы сервера {@code System.out} заменяется.
+ * Вывод команды в ответе не может быть больше 16 МиБ: команда с большим
+ * выводом (например, {@code show} без ограничения над большой коллекцией)
+ * выполняется, но вместо вывода клиент получает сообщение об ошибке,
+ * и {@code show} следует вызывать постранично. Ошибка при выполнении
+ * команды, в том числе {@link Error}, также возвращается клиенту
+ * и не останавливает цикл событий.</p>
+ * <p>Команда {@code exit} закрывает подключение.</p>
+ */
+public class CommandServer implements Closeable {
+    private static final int BACKLOG = 4096;
+    private static final int MAX_REQUEST = 1 << 20;
+    private static final int MAX_PENDING = 1 << 20;     // неотправленных байт, после которых запросы не читаются
+    private static final int INITIAL_BUFFER = 1024;
+    private static final int SINK_BUFFER = 1 << 16;
+    private static final int MAX_RESPONSE = 1 << 24;   // байт вывода команды
+    private static final int REQUEST_HEADER = 4;
+    private static final int RESPONSE_HEADER = 5;
+    private static final byte OK = 0;
+    private static final byte FAILED = 1;
+
+    /**
+     * Команды, недоступные клиентам сервера.
+     */
+    public static final Set<String> LOCAL_COMMANDS = Collections.unmodifiableSet(
+            new TreeSet<>(Arrays.asList("execute_script", "export", "import")));
+
+    private final CommandInvoker invoker;
+    private final ServerSocketChannel server;
+    private final Loop[] loops;
+    private final PrintStream console = System.out;
+    private volatile boolean closed = false;
+    private int nextLoop = 0;
+
+    /**
+     * Создание сервера, принимающего подключения по заданному адресу.
+     * Количество циклов событий равно количеству ядер процессора.
+     * @param invoker объект, команды которого выполняются
+     * @param address адрес сервера
+     * @throws IOException если адрес недоступен
+     */
+    public CommandServer(CommandInvoker invoker, InetSocketAddress address) throws IOException {
+        this.invoker = invoker;
+        loops = new Loop[Runtime.getRuntime().availableProcessors()];
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(address, BACKLOG);
+            server.configureBlocking(false);
+            for (int i = 0; i < loops.length; i++)
+                loops[i] = new Loop(i);
+            server.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return адрес, на котором сервер принимает подключения
+     * @throws IOException при ошибках получения адреса
+     */
+    public InetSocketAddress address() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * Запуск циклов событий и ожидание их завершения
+     * (см. {@link #close()}).
+     */
+    public void run() {
+        System.setOut(OutputSink.routed(console));
+        try {
+            for (Loop loop : loops)
+                loop.thread.start();
+            for (Loop loop : loops)
+                join(loop.thread);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * Остановка сервера: циклы событий закрывают подключения после
+     * выполнения текущих команд, метод дожидается их завершения.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Loop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+                if (loop.thread != Thread.currentThread() && loop.thread.isAlive())
+                    join(loop.thread);
+            }
+        }
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Прием ожидающих подключений в потоке первого цикла; завершенные циклы пропускаются
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Loop loop;
+            do {    // первый цикл работает, пока принимает подключения
+                loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+            } while (loop.stopped);
+            if (loop == loops[0]) {
+                loop.register(channel);
+            } else {
+                loop.accepted.add(channel);
+                loop.selector.wakeup();
+                if (loop.stopped)   // цикл завершился после проверки
+                    loop.dropAccepted();
+            }
+        }
+    }
+
+    // Буфер ответа: заголовок и вывод команды не больше MAX_RESPONSE байт
+    private static final class Response extends ByteArrayOutputStream {
+        private static final int RETAINED = 1 << 24;    // наибольший размер буфера между ответами
+
+        boolean truncated;      // вывод команды превысил MAX_RESPONSE и отброшен
+
+        void begin() {
+            if (buf.length > RETAINED)
+                buf = new byte[INITIAL_BUFFER];
+            count = RESPONSE_HEADER;
+            truncated = false;
+        }
+
+        @Override
+        public void write(int b) {
+            if (!truncated && count < RESPONSE_HEADER + MAX_RESPONSE)
+                super.write(b);
+            else
+                truncated = true;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (!truncated && len <= RESPONSE_HEADER + MAX_RESPONSE - count)
+                super.write(b, off, len);
+            else
+                truncated = true;
+        }
+
+        // Замена вывода команды сообщением об ошибке
+        void fail(String message) {
+            byte[] text = (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+            count = RESPONSE_HEADER;
+            super.write(text, 0, text.length);
+        }
+
+        ByteBuffer finish(byte status) {
+            int length = count - RESPONSE_HEADER;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            buf[4] = status;
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    // Цикл событий и буферы выполнения команд, общие для его подключений
+    private final class Loop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        final Response response = new Response();
+        final OutputSink sink = new OutputSink(response, StandardCharsets.UTF_8, SINK_BUFFER);
+        volatile boolean stopped = false;
+
+        Loop(int number) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "server-" + number);
+        }
+
+        @Override
+        public void run() {
+            OutputSink.bind(sink);
+            try {
+                while (!closed) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = accepted.poll()) != null)
+                        register(channel);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid() && key.isAcceptable())
+                            accept();
+                        else if (key.isValid())
+                            ((Session) key.attachment()).ready();
+                    }
+                }
+            } catch (IOException e) {
+                console.println("Ошибка сервера: " + e.getMessage());
+            } catch (RuntimeException | Error e) {
+                console.println("Ошибка сервера: " + e);
+            } finally {
+                stopped = true;
+                OutputSink.bind(null);
+                dropAccepted();
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Session)
+                        ((Session) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+            // Без первого цикла подключения не принимаются: сервер останавливается
+            if (this == loops[0] && !closed)
+                close();
+        }
+
+        // Закрытие подключений, переданных циклу, но не зарегистрированных им
+        void dropAccepted() {
+            SocketChannel channel;
+            while ((channel = accepted.poll()) != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                new Session(this, channel, invoker);
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        // Выполнение запроса; возвращает ответ, действительный до следующего запроса цикла
+        ByteBuffer execute(Session session, String request) {
+            response.begin();
+            int newline = request.indexOf('\n');
+            String command = newline < 0 ? request : line(request, 0, newline);
+            session.input.clear();
+            for (int start = newline; start >= 0; ) {
+                int end = request.indexOf('\n', start + 1);
+                session.input.add(line(request, start + 1, end < 0 ? request.length() : end));
+                start = end;
+            }
+            session.reader.seek(0);
+
+            byte status = FAILED;
+            Throwable failure = null;
+            try {
+                if (command.trim().isEmpty())
+                    System.out.println("Ошибка: Пустой запрос");
+                else if (session.invoker.execute(command))
+                    status = OK;
+            } catch (IllegalArgumentException e) {
+                // ValueException уже выведено при чтении значения
+                System.out.println("Ошибка: команда не выполнена"
+                        + (e instanceof ValueException ? "" : ": " + e.getMessage()));
+            } catch (IOException e) {
+                // DatabaseException или конец строк ввода команды
+                System.out.println("Ошибка: " + e.getMessage());
+            } catch (Throwable e) {
+                // например, OutOfMemoryError: сообщается клиенту, цикл продолжает работу
+                failure = e;
+            } finally {
+                try {
+                    sink.flush();
+                } catch (IOException ignored) {
+                    // буфер ответа не выбрасывает исключений
+                }
+            }
+            if (failure != null) {
+                status = FAILED;
+                response.fail("Ошибка: команда не выполнена: " + failure);
+            } else if (response.truncated) {
+                status = FAILED;
+                response.fail("Ошибка: вывод команды больше " + MAX_RESPONSE + " байт; " +
+                        "выводите коллекцию по частям: show limit offset");
+            }
+            if (session.invoker.finished())
+                session.closing = true;
+            return response.finish(status);
+        }
+
+        private String line(String request, int from, int to) {
+            if (to > from && request.charAt(to - 1) == '\r')
+                to--;
+            return request.substring(from, to);
+        }
+    }
+
+    // Подключение: сеанс, принятые байты запросов и неотправленные байты ответов
+    private static final class Session {
+        private final Loop loop;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final List<String> input = new ArrayList<>();       // строки ввода текущего запроса
+        private final ScriptReader reader = new ScriptReader(input);
+        private final CommandInvoker invoker;
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);   // режим записи
+        private ByteBuffer out = ByteBuffer.allocate(0);               // режим чтения
+        private boolean closing = false;
+
+        Session(Loop loop, SocketChannel channel, CommandInvoker root) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            invoker = root.session(reader, null, LOCAL_COMMANDS);
+            key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+        }
+
+        // Обработка готовности канала
+        void ready() {
+            try {
+                if (key.isWritable())
+                    flush();
+                if (key.isValid() && key.isReadable()) {
+                    if (channel.read(in) < 0) {
+                        close();
+                        return;
+                    }
+                    process();
+                }
+            } catch (Throwable e) {
+                // ошибка подключения закрывает только его
+                close();
+            }
+        }
+
+        // Выполнение полностью принятых запросов
+        private void process() throws IOException {
+            in.flip();
+            while (!closing && out.remaining() < MAX_PENDING && in.remaining() >= REQUEST_HEADER) {
+                int length = in.getInt(in.position());
+                if (length < 0 || length > MAX_REQUEST) {
+                    close();
+                    return;
+                }
+                if (in.remaining() < REQUEST_HEADER + length) {
+                    if (in.capacity() < REQUEST_HEADER + length) {
+                        ByteBuffer larger = ByteBuffer.allocate(REQUEST_HEADER + length);
+                        larger.put(in);
+                        in = larger;
+                        interest();
+                        return;
+                    }
+                    break;
+                }
+                String request = new String(in.array(), in.position() + REQUEST_HEADER, length, StandardCharsets.UTF_8);
+                in.position(in.position() + REQUEST_HEADER + length);
+                send(loop.execute(this, request));
+            }
+            in.compact();
+            if (in.position() == 0 && in.capacity() > INITIAL_BUFFER)
+                in = ByteBuffer.allocate(INITIAL_BUFFER);
+            interest();
+        }
+
+        // Отправка ответа; неотправленная часть копируется в буфер подключения
+        private void send(ByteBuffer response) throws IOException {
+            if (!out.hasRemaining()) {
+                channel.write(response);
+                if (!response.hasRemaining())
+                    return;
+            }
+            out.compact();
+            if (out.remaining() < response.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.position() + response.remaining(),
+                        out.capacity() * 2));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            out.put(response);
+            out.flip();
+        }
+
+        // Отправка неотправленных байт; затем - выполнение отложенных запросов
+        private void flush() throws IOException {
+            channel.write(out);
+            if (out.hasRemaining())
+                return;
+            if (out.capacity() > MAX_PENDING)
+                out = ByteBuffer.allocate(0);
+            if (closing)
+                close();
+            else
+                process();
+        }
+
+        private void interest() {
+            if (!key.isValid())
+                return;
+            int ops = out.hasRemaining() ? SelectionKey.OP_WRITE : 0;
+            if (!closing && out.remaining() < MAX_PENDING)
+                ops |= SelectionKey.OP_READ;
+            key.interestOps(ops);
+            if (closing && !out.hasRemaining())
+                close();
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package db;
 
-import io.XmlFile;
+import io.BandSnapshot;
+import io.MappedSnapshot;
+import io.OutputSink;
 import types.*;
 import exceptions.*;
 
@@ -11,18 +13,50 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Comparator;
-import java.util.Objects;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
 
 
 /**
  * База данных музыкальных групп.
- * Класс инкапсулирует работу с коллекцией и соответствующим ей XML файлом.
- * (Де)сериализация данных коллекции происходит с помощью JAXB.
+ * Класс инкапсулирует работу с коллекцией и соответствующим ей файлом.
+ * Файл с расширением {@value BandSnapshot#EXTENSION} хранится в двоичном
+ * формате {@link BandSnapshot}, остальные - в формате XML.
+ * (Де)сериализация данных коллекции в XML происходит с помощью JAXB.
+ * <p>Методы класса можно вызывать из нескольких потоков одновременно.
+ * Коллекция изменяется под исключительной блокировкой {@link StampedLock},
+ * количество групп и сумма участников читаются оптимистично, без блокировки
+ * (с повтором под общей блокировкой, если коллекция за это время изменилась).
+ * Вывод и экспорт групп под общей блокировкой только копируют ссылки
+ * на нужные группы (или даты основания), а выводятся или записываются
+ * группы уже без блокировки. Группы не изменяются после добавления
+ * (обновление заменяет объект группы), поэтому копия - согласованный
+ * снимок коллекции, и долгий вывод не задерживает изменения.
+ * Блокировка не реентерабельна, поэтому открытые методы не вызывают
+ * друг друга.</p>
  */
 public class Database {
     private final Path path;
-    private final MusicBandCollection collection;
+    private final Storage storage;      // Способ хранения групп в памяти
+    private MusicBandCollection collection;
+    private MappedSnapshot snapshot;    // Не null, пока коллекция не материализована
+    private WriteAheadLog log;          // Не null, если ведется журнал изменений
+    private Checkpointer checkpointer;  // Не null, если включено фоновое сохранение
+
+    private final StampedLock lock = new StampedLock();
+    private final LongAdder contended = new LongAdder();    // Захваты блокировки, потребовавшие ожидания
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder retried = new LongAdder();      // Оптимистичные чтения, повторенные под блокировкой
+
+    // Запись операции в журнал изменений
+    private interface LogRecord {
+        void writeTo(WriteAheadLog log) throws IOException;
+    }
 
     /**
      * Создание объекта с элементами данных, расположенных в файле.
@@ -32,84 +66,562 @@ public class Database {
      *          или другие неожиданные ошибки при работе JAXB
      */
     public Database(String strPath) throws DatabaseException, JAXBException {
+        this(strPath, false);
+    }
+
+    /**
+     * Создание объекта с элементами данных, расположенных в файле.
+     * Если {@code mapped} равно {@code true} и файл является двоичным снимком,
+     * снимок отображается в память ({@link MappedSnapshot}): команды, не изменяющие
+     * коллекцию, читают данные прямо из файла, а объекты групп создаются только
+     * при первом изменении коллекции.
+     * @param strPath путь к файлу с данными коллекции
+     * @param mapped отображать ли двоичный снимок в память
+     * @throws DatabaseException если происходит ошибка работы с файлом
+     * @throws JAXBException если классы данных с неверными JAXB аннотациями
+     *          или другие неожиданные ошибки при работе JAXB
+     */
+    public Database(String strPath, boolean mapped) throws DatabaseException, JAXBException {
+        this(strPath, mapped, Storage.OBJECTS);
+    }
+
+    /**
+     * Создание объекта с элементами данных, расположенных в файле.
+     * Способ хранения {@code storage} определяет, как коллекция хранит группы
+     * в памяти (см. {@link MusicBandCollection}): хранение по столбцам в несколько
+     * раз уменьшает занимаемую группами память, а хранение вне кучи выводит
+     * группы из-под сборки мусора.
+     * @param strPath путь к файлу с данными коллекции
+     * @param mapped отображать ли двоичный снимок в память
+     * @param storage способ хранения групп в памяти
+     * @throws DatabaseException если происходит ошибка работы с файлом
+     * @throws JAXBException если классы данных с неверными JAXB аннотациями
+     *          или другие неожиданные ошибки при работе JAXB
+     */
+    public Database(String strPath, boolean mapped, Storage storage) throws DatabaseException, JAXBException {
+        this.storage = storage;
         path = Paths.get(strPath).normalize().toAbsolutePath();
         if (Files.exists(path)) {
             try {
-                collection = XmlFile.unmarshall(MusicBandCollection.class, path);
+                if (BandSnapshot.isSnapshot(path) && mapped)
+                    snapshot = MappedSnapshot.open(path);
+                else if (BandSnapshot.isSnapshot(path))
+                    collection = MusicBandCollection.loadBinary(path, storage);
+                else
+                    collection = MusicBandCollection.load(path, storage);
             } catch (UnmarshalException e) {
                 throw new DatabaseException("Файл поврежден или имеет неверный формат: " + path);
+            } catch (DatabaseException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new DatabaseException("Невозможно прочитать файл: " + path);
             }
         }
         else {
-            collection = new MusicBandCollection();
+            collection = new MusicBandCollection(storage);
             save();
         }
     }
 
+    /**
+     * Включение журнала упреждающей записи ({@link WriteAheadLog}).
+     * Журнал хранится рядом с файлом данных в файле с расширением {@code .wal}.
+     * Записанные в журнале изменения воспроизводятся поверх загруженных данных,
+     * после чего каждое изменение коллекции записывается в журнал. Если запись
+     * в журнал не удалась, коллекция остается неизменной.
+     * @param syncEvery количество записей между сбросами журнала на диск
+     * @throws DatabaseException если происходит ошибка работы с журналом
+     */
+    public void openLog(int syncEvery) throws DatabaseException {
+        Path logPath = logPath();
+        long stamp = writeLock();
+        try {
+            log = new WriteAheadLog(logPath, syncEvery, new WriteAheadLog.Replay() {
+                @Override
+                public void add(MusicBand band) {
+                    mutable().insert(band);
+                }
+
+                @Override
+                public void update(MusicBand band) {
+                    mutable().replace(band);
+                }
+
+                @Override
+                public void remove(int[] ids) {
+                    // id удаленных групп не выдаются повторно
+                    MusicBandCollection bands = mutable();
+                    for (int id : ids) {
+                        bands.remove(id);
+                        bands.ids().observe(id);
+                    }
+                }
+
+                @Override
+                public void clear() {
+                    mutable().clear();
+                }
+            });
+        } catch (DatabaseException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DatabaseException("Невозможно открыть журнал: " + logPath);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Включение фонового сохранения ({@link Checkpointer}).
+     * Когда накоплено {@code dirtyThreshold} изменений или с последнего сохранения
+     * прошло {@code intervalMillis} миллисекунд, поток команд снимает копию
+     * списка групп, а запись копии в файл выполняется в отдельном потоке.
+     * Условия проверяются при изменениях коллекции, а интервал - также
+     * по таймеру, поэтому изменения сохраняются и после того, как изменения
+     * коллекции прекратились. Если ведется журнал изменений,
+     * перед снятием копии он ротируется, а записи, вошедшие в копию,
+     * удаляются после ее успешной записи.
+     * @param intervalMillis интервал между сохранениями, 0 - не сохранять по времени
+     * @param dirtyThreshold количество изменений между сохранениями,
+     *                       0 - не сохранять по количеству изменений
+     */
+    public void startCheckpointer(long intervalMillis, int dirtyThreshold) {
+        long stamp = writeLock();
+        try {
+            checkpointer = new Checkpointer(intervalMillis, dirtyThreshold, this::checkpointDue);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
     /**
      * Запись данных в файл.
+     * Данные записываются во временный файл, который затем
+     * атомарно заменяет файл базы данных. Если ведется журнал
+     * изменений, после записи он очищается; иначе удаляется журнал,
+     * оставшийся от предыдущего запуска. Выполняющееся фоновое
+     * сохранение предварительно дожидается завершения.
      * @throws DatabaseException если происходит ошибка работы с файлом
      * @throws JAXBException если классы данных с неверными JAXB аннотациями
      *          или другие неожиданные ошибки при работе JAXB
      */
     public void save() throws DatabaseException, JAXBException {
-        if (Files.notExists(path)) {
-            try {
-                Files.createFile(path);
-            } catch (IOException e) {
-                throw new DatabaseException("Невозможно создать файл: " + path);
+        long stamp = writeLock();
+        try {
+            if (checkpointer != null)
+                checkpointer.await();
+            write(path);
+            if (checkpointer != null)
+                checkpointer.saved();
+            if (log != null) {
+                try {
+                    log.truncate();
+                } catch (IOException e) {
+                    throw new DatabaseException("Ошибка очистки журнала: " + log.path());
+                }
+            }
+            else {
+                discardStaleLog();
             }
+        } finally {
+            lock.unlockWrite(stamp);
         }
+    }
 
-        if (!Files.isWritable(path))
-            throw new DatabaseException("Запись в файл невозможна: " + path);
+    // Путь к файлу журнала изменений
+    private Path logPath() {
+        return path.resolveSibling(path.getFileName() + ".wal");
+    }
 
+    // Удаление журнала предыдущего запуска после сохранения снимка без журнала
+    private void discardStaleLog() throws DatabaseException {
         try {
-            XmlFile.marshall(collection, path);
+            WriteAheadLog.discard(logPath());
+        } catch (IOException e) {
+            throw new DatabaseException("Ошибка удаления устаревшего журнала: " + logPath());
+        }
+    }
+
+    /**
+     * Завершение работы с базой данных без сохранения коллекции.
+     * Выполняющееся фоновое сохранение дожидается завершения,
+     * журнал изменений сбрасывается на диск и закрывается.
+     * @throws DatabaseException если происходит ошибка работы с журналом
+     */
+    public void close() throws DatabaseException {
+        long stamp = writeLock();
+        try {
+            if (checkpointer != null) {
+                checkpointer.await();
+                checkpointer.close();
+                checkpointer = null;
+            }
+            if (log != null) {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    throw new DatabaseException("Ошибка закрытия журнала: " + log.path());
+                } finally {
+                    log = null;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Запись данных в другой файл.
+     * Формат файла определяется его расширением, что позволяет
+     * преобразовывать данные из XML в двоичный формат и обратно.
+     * @param strPath путь к файлу
+     * @throws DatabaseException если происходит ошибка работы с файлом
+     * @throws JAXBException если классы данных с неверными JAXB аннотациями
+     *          или другие неожиданные ошибки при работе JAXB
+     */
+    public void export(String strPath) throws DatabaseException, JAXBException {
+        Path target = Paths.get(strPath).normalize().toAbsolutePath();
+        MappedSnapshot mapped;
+        LocalDate initDate = null;
+        List<MusicBand> bands = null;
+        boolean logging;
+        long stamp = readLock();
+        try {
+            mapped = snapshot;
+            logging = log != null;
+            if (mapped == null) {
+                initDate = collection.initDate();
+                bands = collection.copyOf();
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        // Файл записывается из копии без блокировки
+        if (mapped != null)
+            write(target, mapped.initDate(), mapped.size(), mapped.iterator());
+        else
+            write(target, initDate, bands.size(), bands.iterator());
+        if (target.equals(path) && !logging)
+            discardStaleLog();
+    }
+
+    // Запись данных в файл в формате, соответствующем его расширению
+    private void write(Path target) throws DatabaseException, JAXBException {
+        if (snapshot != null)
+            write(target, snapshot.initDate(), snapshot.size(), snapshot.iterator());
+        else
+            write(target, collection.initDate(), collection.size(), collection.stream().iterator());
+    }
+
+    // Запись групп в файл в формате, соответствующем его расширению
+    private static void write(Path target, LocalDate initDate, int count, Iterator<MusicBand> bands)
+            throws DatabaseException, JAXBException {
+        if (Files.exists(target) && !Files.isWritable(target))
+            throw new DatabaseException("Запись в файл невозможна: " + target);
+
+        try {
+            if (BandSnapshot.isSnapshot(target))
+                BandSnapshot.write(target, initDate, count, bands);
+            else
+                MusicBandCollection.save(target, initDate, bands);
         } catch (MarshalException e) {
-            throw new DatabaseException("Ошибка сохранения в файл: " + path + ": " + e.getMessage());
+            throw new DatabaseException("Ошибка сохранения в файл: " + target + ": " + e.getMessage());
+        } catch (IllegalStateException e) {
+            // поврежденная запись отображенного в память снимка
+            throw new DatabaseException(e.getMessage());
+        } catch (DatabaseException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DatabaseException("Невозможно записать файл: " + target);
+        }
+    }
+
+    // Захват общей блокировки с учетом ожидания
+    private long readLock() {
+        long stamp = lock.tryReadLock();
+        if (stamp == 0) {
+            long start = System.nanoTime();
+            stamp = lock.readLock();
+            waited(start);
+        }
+        return stamp;
+    }
+
+    // Захват исключительной блокировки с учетом ожидания
+    private long writeLock() {
+        long stamp = lock.tryWriteLock();
+        if (stamp == 0) {
+            long start = System.nanoTime();
+            stamp = lock.writeLock();
+            waited(start);
+        }
+        return stamp;
+    }
+
+    private void waited(long start) {
+        contended.increment();
+        waitNanos.add(System.nanoTime() - start);
+    }
+
+    // Оптимистичное чтение значения; если коллекция за время чтения
+    // изменилась, значение читается повторно под общей блокировкой
+    private long readOptimistic(LongSupplier read) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                long result = read.getAsLong();
+                if (lock.validate(stamp))
+                    return result;
+            } catch (RuntimeException ignored) {
+                // состояние прочитано во время изменения и будет прочитано повторно
+            }
+            retried.increment();
+        }
+        stamp = readLock();
+        try {
+            return read.getAsLong();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Возвращает изменяемую коллекцию, при необходимости
+    // создавая ее из отображенного в память снимка
+    private MusicBandCollection mutable() {
+        if (snapshot != null) {
+            collection = MusicBandCollection.fromSnapshot(snapshot, storage);
+            snapshot = null;
+        }
+        return collection;
+    }
+
+    // Запись операции в журнал, если он ведется
+    private void log(LogRecord record) throws DatabaseException {
+        if (log == null)
+            return;
+        try {
+            record.writeTo(log);
+        } catch (IOException e) {
+            throw new DatabaseException("Ошибка записи в журнал: " + log.path() + ": " + e.getMessage());
+        }
+    }
+
+    // Запуск фонового сохранения, если накоплено достаточно изменений
+    private void checkpoint() throws DatabaseException {
+        if (checkpointer != null && checkpointer.mutated())
+            startCheckpoint();
+    }
+
+    // Проверка по таймеру фонового сохранения (выполняется в потоке таймера)
+    private void checkpointDue() {
+        long stamp = writeLock();
+        try {
+            if (checkpointer != null && checkpointer.due())
+                startCheckpoint();
+        } catch (DatabaseException e) {
+            checkpointer.failed(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Снятие копии коллекции и запуск ее записи в отдельном потоке
+    private void startCheckpoint() throws DatabaseException {
+        long start = System.nanoTime();
+        LocalDate initDate = collection.initDate();
+        List<MusicBand> bands = collection.copyOf();
+        WriteAheadLog rotated = log;
+        if (rotated != null) {
+            try {
+                rotated.rotate();
+            } catch (IOException e) {
+                throw new DatabaseException("Ошибка ротации журнала: " + rotated.path() + ": " + e.getMessage());
+            }
         }
+        checkpointer.start(() -> {
+            write(path, initDate, bands.size(), bands.iterator());
+            if (rotated != null)
+                rotated.dropRotated();
+            else
+                discardStaleLog();
+        }, start);
+    }
+
+    // Новая группа с id и датой создания группы found и остальными полями values
+    private static MusicBand updated(MusicBand found, MusicBand values) {
+        return MusicBand.restore(found.getId(), values.getName(), values.getCoordinates(),
+                found.getCreationDate(), values.getNumberOfParticipants(),
+                values.getEstablishmentDate(), values.getGenre(), values.getBestAlbum());
+    }
+
+    /**
+     * @return количество групп в коллекции
+     */
+    public int size() {
+        return (int) readOptimistic(this::count);
+    }
+
+    // Количество групп без блокировки
+    private int count() {
+        return snapshot != null ? snapshot.size() : collection.size();
     }
 
     /**
      * Вывод на экран всех групп.
+     * @see #show(int, int)
      */
     public void show() {
-        if (collection.isEmpty())
-            System.out.println("Коллекция пуста.");
-        collection.forEach(System.out::println);
+        show(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Вывод на экран части групп в порядке возрастания id.
+     * Группы выводятся через общий буферизованный вывод {@link OutputSink}
+     * в переиспользуемый буфер строки.
+     * @param offset количество пропускаемых групп
+     * @param limit наибольшее количество выводимых групп
+     * @return количество выведенных групп
+     */
+    public int show(int offset, int limit) {
+        MappedSnapshot mapped;
+        List<MusicBand> bands = null;
+        int size, from, to;
+        long stamp = readLock();
+        try {
+            mapped = snapshot;
+            size = count();
+            from = Math.min(Math.max(offset, 0), size);
+            to = (int) Math.min((long) from + Math.max(limit, 0), size);
+            if (mapped == null)
+                bands = page(from, to);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        // Группы выводятся из копии без блокировки
+        OutputSink out = OutputSink.out();
+        if (size == 0)
+            out.println("Коллекция пуста.");
+        for (int i = from; i < to; i++) {
+            if (mapped != null)
+                out.println(mapped.describe(i, out.line()));
+            else
+                out.println(bands.get(i - from).describe(out.line()));
+        }
+        return to - from;
+    }
+
+    // Копия групп коллекции с номерами [from, to)
+    private List<MusicBand> page(int from, int to) {
+        if (to - from == collection.size())
+            return collection.copyOf();
+        List<MusicBand> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++)
+            result.add(collection.get(i));
+        return result;
     }
 
     /**
      * Поиск группы MusicBand по {@code id}.
+     * Для поиска по id отображенный в память снимок материализуется.
+     * Группа не изменяется после добавления: обновление заменяет ее
+     * новым объектом ({@link #update(Integer, MusicBand)}).
      * @param id искомый id
      * @return найденный элемент, либо null
      */
     public MusicBand find(Integer id) {
-        return collection.stream()
-                .filter(x -> Objects.equals(x.getId(), id))
-                .findAny()
-                .orElse(null);
+        if (id == null)
+            return null;
+        long stamp = readLock();
+        try {
+            if (snapshot == null)
+                return collection.find(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stamp = writeLock();
+        try {
+            return mutable().find(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
      * Вывести значения дат основания всех групп в порядке убывания.
+     * Даты берутся из индекса коллекции по дате основания без сортировки.
      */
     public void showEstablishmentDates() {
-        collection.stream()
-                .map(MusicBand::getEstablishmentDate)
-                .sorted(Comparator.reverseOrder())
-                .forEach(System.out::println);
+        MappedSnapshot mapped;
+        long[] days = null;
+        long stamp = readLock();
+        try {
+            mapped = snapshot;
+            if (mapped == null)
+                days = collection.establishmentDaysDescending();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        OutputSink out = OutputSink.out();
+        if (mapped != null) {
+            int[] mappedDays = Parallel.range(0, mapped.size()).map(mapped::establishmentDay).toArray();
+            Parallel.sort(mappedDays);
+            for (int i = mappedDays.length - 1; i >= 0; i--)
+                out.println(LocalDate.ofEpochDay(mappedDays[i]));
+            return;
+        }
+        for (long day : days)
+            out.println(LocalDate.ofEpochDay(day));
+    }
+
+    /**
+     * Вывести группы, основанные в заданный период, в порядке возрастания даты основания.
+     * @param from начало периода (включительно)
+     * @param to конец периода (включительно)
+     * @return количество выведенных групп
+     */
+    public int showEstablishedBetween(LocalDate from, LocalDate to) {
+        MappedSnapshot mapped;
+        List<MusicBand> found = new ArrayList<>();
+        long stamp = readLock();
+        try {
+            mapped = snapshot;
+            if (mapped == null)
+                collection.forEachEstablishedBetween(from, to, found::add);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        OutputSink out = OutputSink.out();
+        if (mapped != null) {
+            // Ключ: дата основания в старших 32 битах, номер записи - в младших
+            long fromDay = from.toEpochDay();
+            long toDay = to.toEpochDay();
+            long[] keys = Parallel.range(0, mapped.size())
+                    .filter(i -> mapped.establishmentDay(i) >= fromDay && mapped.establishmentDay(i) <= toDay)
+                    .mapToLong(i -> (long) mapped.establishmentDay(i) << 32 | i)
+                    .toArray();
+            Parallel.sort(keys, 0, keys.length);
+            int n = keys.length;
+            for (int i = 0; i < n; i++)
+                out.println(mapped.describe((int) keys[i], out.line()));
+            return n;
+        }
+        for (MusicBand band : found)
+            out.println(band.describe(out.line()));
+        return found.size();
     }
 
     /**
      * Вывести сумму участников всех групп.
+     * Сумма поддерживается коллекцией при ее изменениях и не требует обхода групп.
      * @return сумма участников групп
      */
     public long getParticipantsSum() {
-        return collection.stream()
-                .map(MusicBand::getNumberOfParticipants)
-                .reduce(0L, Long::sum);
+        return readOptimistic(this::participantsSum);
+    }
+
+    // Сумма участников без блокировки
+    private long participantsSum() {
+        return snapshot != null ? snapshot.participantsSum() : collection.participantsSum();
     }
 
     /**
@@ -117,18 +629,69 @@ public class Database {
      * @return среднее число участников
      */
     public long getParticipantsAvg() {
-        if (collection.isEmpty())
-            return 0;
-        return getParticipantsSum() / collection.size();
+        return readOptimistic(() -> {
+            int size = count();
+            return size == 0 ? 0 : participantsSum() / size;
+        });
     }
 
     /**
      * Добавление группы в коллекцию.
      * @param band добавляемая группа
      * @return {@code true}
+     * @throws DatabaseException если происходит ошибка записи в журнал
+     */
+    public boolean add(MusicBand band) throws DatabaseException {
+        long stamp = writeLock();
+        try {
+            return insert(band);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Добавление группы под исключительной блокировкой
+    private boolean insert(MusicBand band) throws DatabaseException {
+        // id назначается при добавлении, поэтому при ошибке записи
+        // в журнал добавление отменяется
+        MusicBandCollection bands = mutable();
+        boolean result = bands.add(band);
+        try {
+            log(l -> l.add(band));
+        } catch (DatabaseException e) {
+            bands.remove(band.getId());
+            throw e;
+        }
+        checkpoint();
+        return result;
+    }
+
+    /**
+     * Добавление нескольких групп в коллекцию за одну операцию
+     * (см. {@link MusicBandCollection#addAll(List)}).
+     * @param bands добавляемые группы без id
+     * @return количество добавленных групп
+     * @throws DatabaseException если происходит ошибка записи в журнал
      */
-    public boolean add(MusicBand band) {
-        return collection.add(band);
+    public int addAll(List<MusicBand> bands) throws DatabaseException {
+        if (bands.isEmpty())
+            return 0;
+        long stamp = writeLock();
+        try {
+            MusicBandCollection target = mutable();
+            target.addAll(bands);
+            try {
+                log(l -> l.addAll(bands));
+            } catch (DatabaseException e) {
+                for (MusicBand band : bands)
+                    target.remove(band.getId());
+                throw e;
+            }
+            checkpoint();
+            return bands.size();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
@@ -136,39 +699,119 @@ public class Database {
      * значение наибольшего элемента этой коллекции.
      * @param band добавляемая группа
      * @return {@code true}, если добавлена; иначе, {@code false}
+     * @throws DatabaseException если происходит ошибка записи в журнал
      */
-    public boolean addIfMax(MusicBand band) {
-        MusicBand max = collection.stream().max(Comparator.naturalOrder()).orElse(null);
-        if (max == null || band.compareTo(max) > 0)
-            return add(band);
-        return false;
+    public boolean addIfMax(MusicBand band) throws DatabaseException {
+        long stamp = writeLock();
+        try {
+            MusicBand max = mutable().max();
+            if (max == null || band.compareTo(max) > 0)
+                return insert(band);
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Обновление группы по id.
+     * Группа в коллекции заменяется новым объектом, поэтому ранее снятые
+     * копии коллекции не изменяются.
+     * @param id id обновляемой группы
+     * @param values группа с новыми значениями полей
+     * @return обновленная группа, либо {@code null}, если группы с таким id нет
+     * @throws DatabaseException если происходит ошибка записи в журнал
+     */
+    public MusicBand update(Integer id, MusicBand values) throws DatabaseException {
+        if (id == null)
+            return null;
+        long stamp = writeLock();
+        try {
+            MusicBand found = mutable().find(id);
+            if (found == null)
+                return null;
+            MusicBand band = updated(found, values);
+            log(l -> l.update(band));
+            collection.replace(band);
+            checkpoint();
+            return band;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
      * Удаление группы по id.
      * @param id удаляемый id
      * @return {@code true}, если удалена; иначе, {@code false}
+     * @throws DatabaseException если происходит ошибка записи в журнал
      */
-    public boolean remove(Integer id) {
-        return collection.removeIf(x -> Objects.equals(x.getId(), id));
+    public boolean remove(Integer id) throws DatabaseException {
+        if (id == null)
+            return false;
+        long stamp = writeLock();
+        try {
+            MusicBandCollection bands = mutable();
+            if (bands.find(id) == null)
+                return false;
+            log(l -> l.remove(id));
+            bands.remove(id);
+            checkpoint();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
      * Удалить из коллекции все группы, превышающие заданную.
      * @param mb заданная группа
      * @return количество удаленных групп
+     * @throws DatabaseException если происходит ошибка записи в журнал
      */
-    public int removeGreater(MusicBand mb) {
-        int initial = collection.size();
-        collection.removeIf(x -> x.compareTo(mb) > 0);
-        return initial - collection.size();
+    public int removeGreater(MusicBand mb) throws DatabaseException {
+        long stamp = writeLock();
+        try {
+            MusicBandCollection bands = mutable();
+            List<MusicBand> removed = bands.removeGreater(mb);
+            if (!removed.isEmpty()) {
+                try {
+                    log(l -> l.remove(removed.stream().mapToInt(MusicBand::getId).toArray()));
+                } catch (DatabaseException e) {
+                    removed.forEach(bands::insert);
+                    throw e;
+                }
+                checkpoint();
+            }
+            return removed.size();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
      * Очистить коллекцию
+     * @throws DatabaseException если происходит ошибка записи в журнал
      */
-    public void clear() {
-        collection.clear();
+    public void clear() throws DatabaseException {
+        long stamp = writeLock();
+        try {
+            log(WriteAheadLog::clear);
+            mutable().clear();
+            checkpoint();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Статистика блокировки базы данных с момента ее открытия.
+     * @return строковое представление статистики
+     */
+    public String contention() {
+        return String.format("ожиданий блокировки: %d, суммарное ожидание: %.3f с, " +
+                        "повторов оптимистичного чтения: %d",
+                contended.sum(), waitNanos.sum() / 1e9, retried.sum());
     }
 
     /**
@@ -177,13 +820,28 @@ public class Database {
      */
     @Override
     public String toString() {
+        long stamp = readLock();
+        try {
+            return describe();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private String describe() {
         return "Информация о коллекции:" +
                 "\n  файл данных: " + path +
-                "\n  дата инициализации: " + collection.initDate() +
-                "\n  тип коллекции: " + collection.getClass().getSimpleName() +
-                "\n  тип внутреннего представления коллекции: " + MusicBandCollection.getUnderlyingType().getSimpleName() +
+                "\n  формат файла: " + (BandSnapshot.isSnapshot(path) ? "двоичный" : "XML") +
+                "\n  дата инициализации: " + (snapshot != null ? snapshot.initDate() : collection.initDate()) +
+                "\n  тип коллекции: " + MusicBandCollection.class.getSimpleName() +
+                "\n  тип внутреннего представления коллекции: " + (snapshot != null
+                        ? MappedSnapshot.class.getSimpleName()
+                        : collection.getUnderlyingType().getSimpleName()) +
                 "\n  тип элементов: " + MusicBand.class.getSimpleName() +
-                "\n  количество элементов: " + collection.size();
+                "\n  количество элементов: " + count() +
+                "\n  журнал изменений: " + (log != null ? log.path() : "не ведется") +
+                "\n  фоновое сохранение: " + (checkpointer != null ? checkpointer : "выключено") +
+                "\n  параллельное выполнение: " + Parallel.describe();
     }
 }
 
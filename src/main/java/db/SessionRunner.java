@@ -0,0 +1,126 @@
+package db;
+
+import exceptions.ValueException;
+import io.OutputSink;
+import io.ScriptReader;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Одновременное выполнение скриптов в отдельных сеансах.</p>
+ * <p>Каждый сеанс - объект {@link CommandInvoker}, созданный методом
+ * {@link CommandInvoker#session(io.CheckedReader, Path) session}, со своими
+ * потоком ввода, историей команд и стеком выполняемых скриптов; база данных
+ * у сеансов общая. Сеансы выполняются в виртуальных потоках, если их
+ * поддерживает JVM (Java 21 и новее), иначе - в пуле из ограниченного
+ * числа потоков, поэтому тысячи сеансов не требуют тысяч потоков платформы.
+ * Строки каждого скрипта читаются один раз и разделяются его сеансами.</p>
+ * <p>Вывод сеанса собирается в его собственный буфер {@link OutputSink}
+ * и передается в стандартный поток вывода после каждой команды, так что
+ * вывод команды не перемешивается с выводом других сеансов. По окончании
+ * выводятся количество сеансов, время их выполнения и статистика ожидания
+ * блокировки базы данных ({@link Database#contention()}).</p>
+ */
+public class SessionRunner {
+    private static final int OUTPUT_BUFFER = 1 << 16;
+    private static final int POOL_THREADS = Runtime.getRuntime().availableProcessors() * 4;
+
+    private final CommandInvoker invoker;
+    private final Database database;
+
+    /**
+     * @param invoker объект, из которого создаются сеансы
+     * @param database база данных, над которой выполняются команды сеансов
+     */
+    public SessionRunner(CommandInvoker invoker, Database database) {
+        this.invoker = invoker;
+        this.database = database;
+    }
+
+    /**
+     * Выполнение скриптов. Каждый скрипт выполняется в {@code copies} сеансах.
+     * @param scripts пути к скриптам
+     * @param copies количество сеансов каждого скрипта
+     * @return {@code true}, если скрипты прочитаны и выполнены
+     * @throws IOException при ошибках вывода
+     */
+    public boolean run(List<Path> scripts, int copies) throws IOException {
+        List<List<String>> lines = new ArrayList<>();
+        for (Path script : scripts) {
+            try {
+                lines.add(Files.readAllLines(script, Charset.defaultCharset()));
+            } catch (IOException e) {
+                System.out.println("Ошибка: Невозможно прочитать файл: " + script);
+                return false;
+            }
+        }
+
+        PrintStream console = System.out;
+        System.setOut(OutputSink.routed(console));
+        ExecutorService executor = virtualExecutor();
+        String threads = "виртуальные";
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(POOL_THREADS);
+            threads = "пул из " + POOL_THREADS;
+        }
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < scripts.size(); i++) {
+                Path script = scripts.get(i);
+                List<String> scriptLines = lines.get(i);
+                for (int c = 0; c < copies; c++)
+                    executor.execute(() -> runSession(script, scriptLines, console));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            System.setOut(console);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Выполнено сеансов: %d (потоки: %s) за %.3f с%n",
+                scripts.size() * copies, threads, elapsed / 1e9);
+        System.out.println(database.contention());
+        return true;
+    }
+
+    // Выполнение скрипта в новом сеансе текущего потока
+    private void runSession(Path script, List<String> lines, PrintStream console) {
+        OutputSink sink = new OutputSink(console, Charset.defaultCharset(), OUTPUT_BUFFER);
+        OutputSink.bind(sink);
+        try (CommandInvoker session = invoker.session(new ScriptReader(lines), script)) {
+            session.run();
+        } catch (ValueException e) {
+            System.out.println("Ошибка: Выполнение скрипта прервано: " + script);
+        } catch (IOException e) {
+            System.out.println("Ошибка: " + e.getMessage() + " (" + script + ")");
+        } finally {
+            try {
+                sink.flush();
+            } catch (IOException ignored) {
+                // ошибки вывода в консоль не прерывают остальные сеансы
+            }
+            OutputSink.bind(null);
+        }
+    }
+
+    // Исполнитель с виртуальным потоком на задачу, либо null, если JVM их не поддерживает
+    private static ExecutorService virtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package db;
+
+import types.*;
+import exceptions.DatabaseException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Журнал упреждающей записи изменений коллекции.</p>
+ * <p>Каждое изменение коллекции записывается в конец файла журнала
+ * в виде записи: длина данных, данные (код операции и ее аргументы)
+ * и контрольная сумма CRC32. После каждой записи данные передаются
+ * операционной системе, а сброс на диск ({@code fsync}) выполняется
+ * раз в заданное количество записей.</p>
+ * <p>При запуске журнал воспроизводится поверх последнего сохраненного
+ * снимка коллекции. Недописанная или поврежденная запись в конце журнала
+ * (например, после сбоя во время записи) отбрасывается.</p>
+ * <p>Для фонового сохранения журнал поддерживает ротацию: записи, сделанные
+ * до снятия копии коллекции, переносятся в файл с суффиксом {@code .old},
+ * который удаляется после успешного сохранения снимка. Файл {@code .old}
+ * воспроизводится перед основным. Повторное воспроизведение записей,
+ * уже вошедших в снимок, не меняет результата: добавление существующей
+ * группы пропускается, а обновление, удаление и очистка идемпотентны
+ * с учетом следующих за ними записей.</p>
+ * <p>Снимок, сохраненный без ведения журнала, новее оставшегося журнала,
+ * поэтому такой журнал удаляется ({@link #discard(Path)}).</p>
+ */
+class WriteAheadLog implements Closeable {
+    /**
+     * Получатель воспроизводимых операций журнала.
+     */
+    interface Replay {
+        void add(MusicBand band);
+        void update(MusicBand band);
+        void remove(int[] ids);
+        void clear();
+    }
+
+    private static final byte ADD = 1;
+    private static final byte UPDATE = 2;
+    private static final byte REMOVE = 3;
+    private static final byte CLEAR = 4;
+
+    private static final int BATCH_SIZE = 1 << 20;
+
+    private static final MusicGenre[] genres = MusicGenre.values();
+
+    private final Path path;
+    private final Path rotated;
+    private FileChannel channel;
+    private final int syncEvery;
+    private int unsynced = 0;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Открытие журнала и воспроизведение записанных в нем операций.
+     * @param path путь к файлу журнала
+     * @param syncEvery количество записей между сбросами журнала на диск
+     * @param replay получатель воспроизводимых операций
+     * @throws IOException при ошибках работы с файлом
+     */
+    WriteAheadLog(Path path, int syncEvery, Replay replay) throws IOException {
+        if (syncEvery < 1)
+            throw new IllegalArgumentException("Период сброса журнала должен быть больше нуля: " + syncEvery);
+        this.path = path;
+        this.rotated = path.resolveSibling(path.getFileName() + ".old");
+        this.syncEvery = syncEvery;
+        if (Files.exists(rotated)) {
+            try (FileChannel old = FileChannel.open(rotated, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                replay(old, replay);
+            }
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay(channel, replay);
+    }
+
+    /**
+     * @return путь к файлу журнала
+     */
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Запись добавления группы.
+     * @param band добавленная группа с установленным id
+     * @throws IOException при ошибках записи
+     */
+    void add(MusicBand band) throws IOException {
+        begin(ADD);
+        writeBand(band);
+        commit();
+    }
+
+    /**
+     * Запись добавления нескольких групп. Записи накапливаются
+     * и передаются в файл блоками.
+     * @param bands добавленные группы с установленными id
+     * @throws IOException при ошибках записи
+     */
+    void addAll(List<MusicBand> bands) throws IOException {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(BATCH_SIZE);
+        for (MusicBand band : bands) {
+            begin(ADD);
+            writeBand(band);
+            batch.write(record());
+            if (batch.size() >= BATCH_SIZE) {
+                write(batch);
+                batch.reset();
+            }
+        }
+        write(batch);
+        unsynced += bands.size() - 1;
+        synced();
+    }
+
+    /**
+     * Запись обновления группы.
+     * @param band группа после обновления
+     * @throws IOException при ошибках записи
+     */
+    void update(MusicBand band) throws IOException {
+        begin(UPDATE);
+        writeBand(band);
+        commit();
+    }
+
+    /**
+     * Запись удаления групп.
+     * @param ids id удаленных групп
+     * @throws IOException при ошибках записи
+     */
+    void remove(int... ids) throws IOException {
+        begin(REMOVE);
+        out.writeInt(ids.length);
+        for (int id : ids)
+            out.writeInt(id);
+        commit();
+    }
+
+    /**
+     * Запись очистки коллекции.
+     * @throws IOException при ошибках записи
+     */
+    void clear() throws IOException {
+        begin(CLEAR);
+        commit();
+    }
+
+    /**
+     * Очистка журнала после сохранения снимка коллекции.
+     * @throws IOException при ошибках работы с файлом
+     */
+    void truncate() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+        unsynced = 0;
+        Files.deleteIfExists(rotated);
+    }
+
+    /**
+     * Ротация журнала перед фоновым сохранением снимка коллекции.
+     * Записи журнала переносятся в файл {@code .old}, а новые записи
+     * пишутся в пустой журнал. Если файл {@code .old} остался от неудачного
+     * сохранения, записи дописываются в его конец.
+     * @throws IOException при ошибках работы с файлами
+     */
+    void rotate() throws IOException {
+        channel.force(false);
+        unsynced = 0;
+        if (Files.exists(rotated)) {
+            try (FileChannel old = FileChannel.open(rotated, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long done = 0;
+                long size = channel.size();
+                while (done < size)
+                    done += channel.transferTo(done, size - done, old);
+                old.force(false);
+            }
+            channel.truncate(0);
+            channel.force(true);
+        }
+        else {
+            channel.close();
+            Files.move(path, rotated, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Удаление файла {@code .old} после успешного сохранения снимка,
+     * в который вошли его записи. Может вызываться из другого потока,
+     * так как основной файл журнала не затрагивается.
+     * @throws IOException при ошибках работы с файлом
+     */
+    void dropRotated() throws IOException {
+        Files.deleteIfExists(rotated);
+    }
+
+    /**
+     * Удаление журнала, оставшегося от предыдущего запуска, вместе
+     * с файлом {@code .old}. Вызывается после сохранения снимка без ведения
+     * журнала: записи такого журнала старше снимка и не должны
+     * воспроизводиться поверх него.
+     * @param path путь к файлу журнала
+     * @throws IOException при ошибках работы с файлами
+     */
+    static void discard(Path path) throws IOException {
+        Files.deleteIfExists(path.resolveSibling(path.getFileName() + ".old"));
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Сброс журнала на диск и закрытие файла.
+     * @throws IOException при ошибках работы с файлом
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (unsynced > 0)
+                channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void begin(byte op) throws IOException {
+        bytes.reset();
+        out.writeInt(0);    // место под длину записи
+        out.writeByte(op);
+    }
+
+    private void commit() throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(record());
+        while (record.hasRemaining())
+            channel.write(record);
+        synced();
+    }
+
+    // Завершенная запись: длина, данные и контрольная сумма
+    private byte[] record() throws IOException {
+        out.writeInt(0);    // место под контрольную сумму
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.capacity() - 2 * Integer.BYTES;
+        crc.reset();
+        crc.update(record.array(), Integer.BYTES, length);
+        record.putInt(0, length);
+        record.putInt(record.capacity() - Integer.BYTES, (int) crc.getValue());
+        return record.array();
+    }
+
+    private void write(ByteArrayOutputStream batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    // Учет переданной записи и сброс журнала на диск раз в syncEvery записей
+    private void synced() throws IOException {
+        if (++unsynced >= syncEvery) {
+            channel.force(false);
+            unsynced = 0;
+        }
+    }
+
+    // Воспроизводит файл журнала и отбрасывает его некорректную часть
+    private void replay(FileChannel channel, Replay replay) throws IOException {
+        long valid = replayValid(channel, replay);
+        if (valid < channel.size()) {
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+    }
+
+    // Воспроизводит файл журнала и возвращает длину его корректной части
+    private long replayValid(FileChannel channel, Replay replay) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel), 1 << 16));
+        long valid = 0;
+        byte[] data = new byte[256];
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+                if (length < 1 || valid + length + 2L * Integer.BYTES > channel.size())
+                    break;
+                if (data.length < length)
+                    data = new byte[length];
+                in.readFully(data, 0, length);
+                crc.reset();
+                crc.update(data, 0, length);
+                if (in.readInt() != (int) crc.getValue())
+                    break;
+            } catch (EOFException e) {
+                break;
+            }
+            apply(new DataInputStream(new ByteArrayInputStream(data, 0, length)), replay);
+            valid += length + 2L * Integer.BYTES;
+        }
+        return valid;
+    }
+
+    private void apply(DataInputStream in, Replay replay) throws IOException {
+        byte op = in.readByte();
+        try {
+            switch (op) {
+                case ADD:
+                    replay.add(readBand(in));
+                    break;
+                case UPDATE:
+                    replay.update(readBand(in));
+                    break;
+                case REMOVE:
+                    int[] ids = new int[in.readInt()];
+                    for (int i = 0; i < ids.length; i++)
+                        ids[i] = in.readInt();
+                    replay.remove(ids);
+                    break;
+                case CLEAR:
+                    replay.clear();
+                    break;
+                default:
+                    throw new DatabaseException("Неизвестная операция в журнале " + path + ": " + op);
+            }
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new DatabaseException("Журнал поврежден: " + path);
+        }
+    }
+
+    private void writeBand(MusicBand band) throws IOException {
+        out.writeInt(band.getId());
+        out.writeLong(band.getCreationDate().toEpochDay());
+        writeString(band.getName());
+        out.writeLong(band.getCoordinates().getX());
+        out.writeDouble(band.getCoordinates().getY());
+        out.writeLong(band.getNumberOfParticipants());
+        out.writeLong(band.getEstablishmentDate().toEpochDay());
+        out.writeByte(band.getGenre().ordinal());
+        writeString(band.getBestAlbum().getName());
+        out.writeLong(band.getBestAlbum().getTracks());
+    }
+
+    private static MusicBand readBand(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        LocalDate creationDate = LocalDate.ofEpochDay(in.readLong());
+        String name = readString(in);
+        Coordinates coordinates = new Coordinates(in.readLong(), in.readDouble());
+        long participants = in.readLong();
+        LocalDate establishmentDate = LocalDate.ofEpochDay(in.readLong());
+        int genre = in.readByte();
+        if (genre < 0 || genre >= genres.length)
+            throw new IllegalArgumentException("Неверный жанр: " + genre);
+        Album album = new Album(readString(in), in.readLong());
+        return MusicBand.restore(id, name, coordinates, creationDate, participants,
+                establishmentDate, genres[genre], album);
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            throw new IllegalArgumentException("Неверная длина строки: " + length);
+        byte[] b = new byte[length];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
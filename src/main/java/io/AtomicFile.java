@@ -0,0 +1,77 @@
+package io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Атомарная запись файла.
+ * Данные записываются во временный файл в том же каталоге, который после
+ * сброса на диск переименовывается в целевой. При сбое во время записи
+ * прежнее содержимое целевого файла сохраняется. Каждая запись использует
+ * свой временный файл с уникальным именем, поэтому одновременные записи
+ * одного файла не мешают друг другу: целевой файл получает содержимое
+ * одной из них целиком.
+ */
+public final class AtomicFile {
+    private AtomicFile() {}
+
+    /**
+     * Функция записи содержимого файла в канал.
+     * @param <X> тип исключения, выбрасываемого функцией помимо {@link IOException}
+     */
+    @FunctionalInterface
+    public interface Content<X extends Exception> {
+        /**
+         * Записывает содержимое в канал.
+         * @param channel канал временного файла
+         * @throws IOException при ошибках записи
+         * @throws X при прочих ошибках формирования содержимого
+         */
+        void writeTo(FileChannel channel) throws IOException, X;
+    }
+
+    /**
+     * Атомарная запись файла.
+     * Если целевой файл существует, временный файл получает его права доступа.
+     * @param path путь к файлу
+     * @param content функция записи содержимого
+     * @param <X> тип исключения функции записи
+     * @throws IOException при ошибках работы с файлом
+     * @throws X при ошибках функции записи
+     */
+    public static <X extends Exception> void write(Path path, Content<X> content) throws IOException, X {
+        Path tmp;
+        FileChannel created;
+        while (true) {
+            tmp = path.resolveSibling(path.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                created = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // имя занято другой записью, выбирается другое
+            }
+        }
+        try {
+            try (FileChannel channel = created) {
+                content.writeTo(channel);
+                channel.force(true);
+            }
+            if (Files.exists(path)) {
+                try {
+                    Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(path));
+                } catch (UnsupportedOperationException ignored) {
+                    // Файловая система не поддерживает права доступа POSIX
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package io;
+
+import types.Album;
+import types.Coordinates;
+import types.MusicBand;
+import types.Parallel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Чтение групп из файла CSV.</p>
+ * <p>Каждая непустая строка файла описывает одну группу и содержит поля
+ * {@value #HEADER}, разделенные запятыми. Поля, содержащие запятые или
+ * кавычки, заключаются в двойные кавычки, а кавычки внутри них удваиваются.
+ * Пробелы вокруг полей без кавычек отбрасываются. Первая строка файла может
+ * быть заголовком - строкой, первое поле которой равно {@code name}.</p>
+ * <p>Строки файла читаются последовательно, а затем разбиваются на блоки,
+ * которые разбираются и проверяются параллельно в общем пуле
+ * {@link java.util.concurrent.ForkJoinPool}, если строк больше порога
+ * {@link Parallel}. Каждый блок разбирается своим
+ * {@link FieldParser}. Группы и ошибки возвращаются в порядке строк файла.
+ * Id группам не назначаются.</p>
+ */
+public final class BandCsv {
+    /** Поля строки файла в порядке следования */
+    public static final String HEADER = "name,x,y,numberOfParticipants,establishmentDate,album,tracks,genre";
+
+    private static final int FIELDS = 8;
+    private static final int CHUNK_LINES = 4096;
+
+    private final List<MusicBand> bands;
+    private final List<String> errors;
+    private final int lines;
+
+    private BandCsv(List<MusicBand> bands, List<String> errors, int lines) {
+        this.bands = bands;
+        this.errors = errors;
+        this.lines = lines;
+    }
+
+    /**
+     * Чтение и разбор файла.
+     * @param path путь к файлу
+     * @param creationDate дата создания записей групп
+     * @return результат разбора
+     * @throws IOException при ошибках чтения файла
+     */
+    public static BandCsv read(Path path, LocalDate creationDate) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(path, Charset.defaultCharset())) {
+            String line;
+            while ((line = in.readLine()) != null)
+                lines.add(line);
+        }
+
+        int first = !lines.isEmpty() && isHeader(lines.get(0)) ? 1 : 0;
+        int chunks = (lines.size() - first + CHUNK_LINES - 1) / CHUNK_LINES;
+        MusicBand[] parsed = new MusicBand[lines.size()];
+        List<List<String>> chunkErrors = new ArrayList<>(Collections.<List<String>>nCopies(chunks, null));
+        IntStream chunkRange = IntStream.range(0, chunks);
+        if (Parallel.isParallel(lines.size()))
+            chunkRange = chunkRange.parallel();
+        chunkRange.forEach(c -> {
+            int from = first + c * CHUNK_LINES;
+            int to = Math.min(from + CHUNK_LINES, lines.size());
+            chunkErrors.set(c, parse(path, lines, from, to, creationDate, parsed));
+        });
+
+        List<MusicBand> bands = new ArrayList<>(parsed.length);
+        for (MusicBand band : parsed) {
+            if (band != null)
+                bands.add(band);
+        }
+        List<String> errors = new ArrayList<>();
+        for (List<String> e : chunkErrors)
+            errors.addAll(e);
+        return new BandCsv(bands, errors, lines.size() - first);
+    }
+
+    /**
+     * @return разобранные группы в порядке строк файла
+     */
+    public List<MusicBand> bands() {
+        return bands;
+    }
+
+    /**
+     * @return сообщения об ошибках в порядке строк файла
+     */
+    public List<String> errors() {
+        return errors;
+    }
+
+    /**
+     * @return количество строк файла без заголовка
+     */
+    public int lines() {
+        return lines;
+    }
+
+    // Разбор строк [from, to) в соответствующие элементы result
+    private static List<String> parse(Path path, List<String> lines, int from, int to,
+                                      LocalDate creationDate, MusicBand[] result) {
+        List<String> errors = Collections.emptyList();
+        FieldParser parser = new FieldParser();
+        String[] fields = new String[FIELDS];
+        for (int i = from; i < to; i++) {
+            String line = lines.get(i);
+            if (line.trim().isEmpty())
+                continue;
+            String error = split(line, fields);
+            if (error == null) {
+                try {
+                    error = band(fields, parser, creationDate, result, i);
+                } catch (IllegalArgumentException e) {
+                    error = e.getMessage();
+                }
+            }
+            if (error != null) {
+                if (errors.isEmpty())
+                    errors = new ArrayList<>();
+                errors.add(path + ":" + (i + 1) + ": " + error);
+            }
+        }
+        return errors;
+    }
+
+    // Создание группы из полей строки в result[i]; сообщение об ошибке, либо null
+    private static String band(String[] fields, FieldParser parser, LocalDate creationDate,
+                               MusicBand[] result, int i) {
+        if (!parser.parseLong(fields[1]))
+            return invalid("x", fields[1]);
+        long x = parser.longValue();
+        if (!parser.parseDouble(fields[2]))
+            return invalid("y", fields[2]);
+        double y = parser.doubleValue();
+        if (!parser.parseLong(fields[3]))
+            return invalid("numberOfParticipants", fields[3]);
+        long participants = parser.longValue();
+        if (!parser.parseDate(fields[4]))
+            return invalid("establishmentDate", fields[4]);
+        LocalDate establishmentDate = parser.date();
+        if (!parser.parseLong(fields[6]))
+            return invalid("tracks", fields[6]);
+        long tracks = parser.longValue();
+        if (!parser.parseGenre(fields[7]))
+            return invalid("genre", fields[7]);
+        result[i] = MusicBand.create(fields[0], new Coordinates(x, y), creationDate, participants,
+                establishmentDate, parser.genre(), new Album(fields[5], tracks));
+        return null;
+    }
+
+    private static String invalid(String field, String value) {
+        return "Недопустимое значение поля " + field + ": " + value;
+    }
+
+    // Разбиение строки на поля; сообщение об ошибке, либо null
+    private static String split(String line, String[] fields) {
+        int length = line.length();
+        int count = 0;
+        int i = 0;
+        StringBuilder quoted = null;
+        while (true) {
+            while (i < length && line.charAt(i) == ' ')
+                i++;
+            String field;
+            if (i < length && line.charAt(i) == '"') {
+                if (quoted == null)
+                    quoted = new StringBuilder();
+                quoted.setLength(0);
+                i++;
+                while (true) {
+                    if (i == length)
+                        return "Незакрытая кавычка";
+                    char c = line.charAt(i++);
+                    if (c != '"')
+                        quoted.append(c);
+                    else if (i < length && line.charAt(i) == '"')
+                        quoted.append(line.charAt(i++));
+                    else
+                        break;
+                }
+                field = quoted.toString();
+                while (i < length && line.charAt(i) == ' ')
+                    i++;
+                if (i < length && line.charAt(i) != ',')
+                    return "Символы после закрывающей кавычки";
+            } else {
+                int start = i;
+                while (i < length && line.charAt(i) != ',')
+                    i++;
+                field = line.substring(start, i).trim();
+            }
+            if (count < FIELDS)
+                fields[count] = field;
+            count++;
+            if (i == length)
+                break;
+            i++;    // запятая
+        }
+        if (count != FIELDS)
+            return "Ожидалось полей: " + FIELDS + ", получено: " + count;
+        return null;
+    }
+
+    // Проверка, является ли строка заголовком
+    private static boolean isHeader(String line) {
+        String[] fields = new String[FIELDS];
+        split(line, fields);
+        return "name".equals(fields[0]);
+    }
+}
@@ -0,0 +1,282 @@
+package io;
+
+import types.*;
+import exceptions.DatabaseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * <p>Двоичный снимок коллекции музыкальных групп.</p>
+ * <p>Файл состоит из заголовка, области записей фиксированной длины
+ * и области строк. Заголовок ({@value #HEADER_SIZE} байт): сигнатура,
+ * версия формата, дата создания коллекции (в днях от эпохи) и количество
+ * записей. Каждая запись ({@value #RECORD_SIZE} байт) содержит все
+ * примитивные поля группы и смещения названий группы и альбома в области
+ * строк. Строка хранится как длина в байтах и байты в кодировке UTF-8.</p>
+ * <p>Все многобайтовые поля записи выровнены по своему размеру.</p>
+ */
+public final class BandSnapshot {
+    /** Расширение файлов двоичного снимка */
+    public static final String EXTENSION = ".bin";
+
+    static final int MAGIC = 0x4D424E44;   // "MBND"
+    static final short VERSION = 1;
+    static final int NULL_DATE = Integer.MIN_VALUE;
+
+    /** Размер заголовка файла в байтах */
+    public static final int HEADER_SIZE = 16;
+    /** Размер записи в байтах */
+    public static final int RECORD_SIZE = 64;
+
+    // Смещения полей заголовка
+    static final int H_MAGIC = 0;
+    static final int H_VERSION = 4;
+    static final int H_INIT_DATE = 8;
+    static final int H_COUNT = 12;
+
+    // Смещения полей записи
+    static final int R_ID = 0;
+    static final int R_CREATION_DATE = 4;
+    static final int R_PARTICIPANTS = 8;
+    static final int R_ESTABLISHMENT_DATE = 16;
+    static final int R_GENRE = 20;
+    static final int R_X = 24;
+    static final int R_Y = 32;
+    static final int R_TRACKS = 40;
+    static final int R_NAME = 48;
+    static final int R_ALBUM = 56;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final MusicGenre[] genres = MusicGenre.values();
+
+    private BandSnapshot() {}
+
+    /**
+     * Проверяет, является ли файл двоичным снимком (по расширению).
+     * @param path путь к файлу
+     * @return {@code true}, если файл имеет расширение {@value #EXTENSION}
+     */
+    public static boolean isSnapshot(Path path) {
+        return path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    /**
+     * Запись снимка в файл.
+     * Файл записывается атомарно с помощью {@link AtomicFile}.
+     * @param path путь к файлу
+     * @param initDate дата создания коллекции
+     * @param count количество групп
+     * @param bands группы в порядке записи
+     * @throws IOException при ошибках работы с файлом
+     */
+    public static void write(Path path, LocalDate initDate, int count, Iterator<MusicBand> bands)
+            throws IOException {
+        AtomicFile.write(path, channel -> {
+            Cursor records = new Cursor(channel, HEADER_SIZE);
+            Cursor strings = new Cursor(channel, HEADER_SIZE + (long) count * RECORD_SIZE);
+            long stringsStart = strings.position();
+            int written = 0;
+            while (bands.hasNext()) {
+                if (written == count)
+                    throw new IllegalStateException("Количество групп больше заявленного");
+                MusicBand band = bands.next();
+                ByteBuffer r = records.reserve(RECORD_SIZE);
+                int base = r.position();
+                r.putInt(base + R_ID, band.getId());
+                r.putInt(base + R_CREATION_DATE, epochDay(band.getCreationDate()));
+                r.putLong(base + R_PARTICIPANTS, band.getNumberOfParticipants());
+                r.putInt(base + R_ESTABLISHMENT_DATE, epochDay(band.getEstablishmentDate()));
+                r.put(base + R_GENRE, (byte) band.getGenre().ordinal());
+                r.putLong(base + R_X, band.getCoordinates().getX());
+                r.putDouble(base + R_Y, band.getCoordinates().getY());
+                r.putLong(base + R_TRACKS, band.getBestAlbum().getTracks());
+                r.putLong(base + R_NAME, strings.position() - stringsStart);
+                strings.putString(band.getName());
+                r.putLong(base + R_ALBUM, strings.position() - stringsStart);
+                strings.putString(band.getBestAlbum().getName());
+                r.position(base + RECORD_SIZE);
+                written++;
+            }
+            if (written != count)
+                throw new IllegalStateException("Количество групп меньше заявленного");
+            records.flush();
+            strings.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(H_MAGIC, MAGIC);
+            header.putShort(H_VERSION, VERSION);
+            header.putInt(H_INIT_DATE, initDate == null ? NULL_DATE : epochDay(initDate));
+            header.putInt(H_COUNT, count);
+            writeFully(channel, header, 0);
+        });
+    }
+
+    /**
+     * Последовательное чтение снимка из файла.
+     * @param path путь к файлу
+     * @param init функция создания результата по дате создания коллекции
+     * @param sink получатель групп в порядке записи
+     * @param <T> тип результата
+     * @return результат, созданный функцией {@code init}
+     * @throws DatabaseException если файл поврежден или имеет неверный формат
+     * @throws IOException при ошибках работы с файлом
+     */
+    public static <T> T read(Path path, Function<LocalDate, T> init, BiConsumer<T, MusicBand> sink)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0, path);
+            int count = checkHeader(header, channel.size(), path);
+            Cursor records = new Cursor(channel, HEADER_SIZE);
+            Cursor strings = new Cursor(channel, HEADER_SIZE + (long) count * RECORD_SIZE);
+            try {
+                int initDate = header.getInt(H_INIT_DATE);
+                T result = init.apply(initDate == NULL_DATE ? null : LocalDate.ofEpochDay(initDate));
+                for (int i = 0; i < count; i++) {
+                    ByteBuffer r = records.fetch(RECORD_SIZE, path);
+                    int base = r.position();
+                    int genre = r.get(base + R_GENRE);
+                    if (genre < 0 || genre >= genres.length)
+                        throw new IllegalArgumentException("Неверный жанр: " + genre);
+                    sink.accept(result, MusicBand.restore(
+                            r.getInt(base + R_ID),
+                            strings.getString(path),
+                            new Coordinates(r.getLong(base + R_X), r.getDouble(base + R_Y)),
+                            LocalDate.ofEpochDay(r.getInt(base + R_CREATION_DATE)),
+                            r.getLong(base + R_PARTICIPANTS),
+                            LocalDate.ofEpochDay(r.getInt(base + R_ESTABLISHMENT_DATE)),
+                            genres[genre],
+                            new Album(strings.getString(path), r.getLong(base + R_TRACKS))));
+                    r.position(base + RECORD_SIZE);
+                }
+                return result;
+            } catch (IllegalArgumentException | IllegalStateException | DateTimeException e) {
+                throw corrupted(path);
+            }
+        }
+    }
+
+    // Проверяет заголовок и возвращает количество записей
+    static int checkHeader(ByteBuffer header, long size, Path path) throws DatabaseException {
+        int count = header.getInt(H_COUNT);
+        if (header.getInt(H_MAGIC) != MAGIC || header.getShort(H_VERSION) != VERSION
+                || count < 0 || HEADER_SIZE + (long) count * RECORD_SIZE > size)
+            throw corrupted(path);
+        return count;
+    }
+
+    static DatabaseException corrupted(Path path) {
+        return new DatabaseException("Файл поврежден или имеет неверный формат: " + path);
+    }
+
+    private static int epochDay(LocalDate date) throws DatabaseException {
+        long day = date.toEpochDay();
+        if (day <= NULL_DATE || day > Integer.MAX_VALUE)
+            throw new DatabaseException("Дата вне допустимого диапазона двоичного формата: " + date);
+        return (int) day;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path path)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0)
+                throw corrupted(path);
+            position += n;
+        }
+        buffer.flip();
+    }
+
+    // Буферизованный последовательный доступ к области файла,
+    // начинающейся с заданной позиции
+    private static final class Cursor {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long position;      // позиция в файле начала буфера
+
+        Cursor(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+            buffer.limit(0);
+        }
+
+        // Позиция в файле следующего записываемого байта
+        long position() {
+            return position + buffer.position();
+        }
+
+        // Резервирует в буфере место под n записываемых байт
+        ByteBuffer reserve(int n) throws IOException {
+            if (buffer.limit() != buffer.capacity())
+                buffer.clear();
+            if (buffer.remaining() < n) {
+                flush();
+                if (buffer.capacity() < n)
+                    buffer = ByteBuffer.allocate(n);
+            }
+            return buffer;
+        }
+
+        void putString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            reserve(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            writeFully(channel, buffer, position);
+            position += buffer.limit();
+            buffer.clear();
+        }
+
+        // Обеспечивает наличие в буфере n непрочитанных байт
+        ByteBuffer fetch(int n, Path path) throws IOException {
+            if (buffer.remaining() < n) {
+                position += buffer.position();
+                buffer.compact();
+                if (buffer.capacity() < n) {
+                    ByteBuffer larger = ByteBuffer.allocate(n);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+                long from = position + buffer.position();
+                while (buffer.position() < n) {
+                    int read = channel.read(buffer, from);
+                    if (read < 0)
+                        throw corrupted(path);
+                    from += read;
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        String getString(Path path) throws IOException {
+            int length = fetch(Integer.BYTES, path).getInt();
+            // Длина ограничена оставшимися байтами файла, поэтому поврежденная
+            // длина не приводит к выделению лишней памяти
+            if (length < 0 || length > channel.size() - position - buffer.position())
+                throw corrupted(path);
+            ByteBuffer b = fetch(length, path);
+            String result = new String(b.array(), b.arrayOffset() + b.position(), length, StandardCharsets.UTF_8);
+            b.position(b.position() + length);
+            return result;
+        }
+    }
+}
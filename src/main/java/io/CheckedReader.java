@@ -8,11 +8,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
  * <p>Читает текст из символьного потока ввода.</p>
@@ -27,9 +30,14 @@ import java.util.function.Function;
  * <p>Сообщения о некорректном вводе всегда выводятся в {@code System.out}.
  * Кроме того, в интерактивном режиме в случае некорректного ввода запрос на
  * ввод повторяется.</p>
+ * <p>Для полей групп предназначены функции {@link #readLong(LongConsumer, String) readLong},
+ * {@link #readDouble(DoubleConsumer, String) readDouble}, {@link #readDate(Consumer, String) readDate}
+ * и {@link #readGenre(Consumer, String) readGenre}, которые разбирают значение
+ * с помощью {@link FieldParser} без упаковки чисел и исключений.</p>
  */
 public class CheckedReader extends BufferedReader {
     private final boolean interactive;
+    private final FieldParser fields = new FieldParser();
 
     private static final HashMap<Class<?>, Function<String,?>> parser = new HashMap<>();
     static {
@@ -52,6 +60,19 @@ public class CheckedReader extends BufferedReader {
         interactive = in.equals(System.in);
     }
 
+    /**
+     * Создает {@code CheckedReader} для наследников, читающих строки
+     * из иного источника. Буфер символов не используется и поэтому
+     * имеет наименьший размер: таких объектов может быть много
+     * (по одному на сеанс).
+     * @param in поток символов
+     * @param interactive интерактивный ли режим
+     */
+    protected CheckedReader(Reader in, boolean interactive) {
+        super(in, 1);
+        this.interactive = interactive;
+    }
+
     /**
      * Вывод подсказки или строки приглашения в интерактивном режиме
      * @param prompt стока-приглашение
@@ -132,4 +153,109 @@ public class CheckedReader extends BufferedReader {
             }
         }
     }
+
+    /**
+     * Ввод целого числа.
+     * Проверка выполняется в передаваемом в качестве параметра
+     * методе-потребителе значения.
+     * @param fn метод-потребитель вводимых данных
+     * @param prompt стока-приглашение
+     * @throws IOException при неудачной или прерванной операции ввода
+     * @throws ValueException при вводе некорректного значения
+     */
+    public void readLong(LongConsumer fn, String prompt) throws IOException {
+        while (true) {
+            String line = readString(prompt);
+            if (!fields.parseLong(line)) {
+                rejected(line);
+                continue;
+            }
+            if (accepted(() -> fn.accept(fields.longValue())))
+                return;
+        }
+    }
+
+    /**
+     * Ввод числа с плавающей точкой.
+     * Проверка выполняется в передаваемом в качестве параметра
+     * методе-потребителе значения.
+     * @param fn метод-потребитель вводимых данных
+     * @param prompt стока-приглашение
+     * @throws IOException при неудачной или прерванной операции ввода
+     * @throws ValueException при вводе некорректного значения
+     */
+    public void readDouble(DoubleConsumer fn, String prompt) throws IOException {
+        while (true) {
+            String line = readString(prompt);
+            if (!fields.parseDouble(line)) {
+                rejected(line);
+                continue;
+            }
+            if (accepted(() -> fn.accept(fields.doubleValue())))
+                return;
+        }
+    }
+
+    /**
+     * Ввод даты в формате ISO (ГГГГ-ММ-ДД).
+     * Проверка выполняется в передаваемом в качестве параметра
+     * методе-потребителе значения.
+     * @param fn метод-потребитель вводимых данных
+     * @param prompt стока-приглашение
+     * @throws IOException при неудачной или прерванной операции ввода
+     * @throws ValueException при вводе некорректного значения
+     */
+    public void readDate(Consumer<LocalDate> fn, String prompt) throws IOException {
+        while (true) {
+            String line = readString(prompt);
+            if (!fields.parseDate(line)) {
+                rejected(line);
+                continue;
+            }
+            if (accepted(() -> fn.accept(fields.date())))
+                return;
+        }
+    }
+
+    /**
+     * Ввод жанра.
+     * Проверка выполняется в передаваемом в качестве параметра
+     * методе-потребителе значения.
+     * @param fn метод-потребитель вводимых данных
+     * @param prompt стока-приглашение
+     * @throws IOException при неудачной или прерванной операции ввода
+     * @throws ValueException при вводе некорректного значения
+     */
+    public void readGenre(Consumer<MusicGenre> fn, String prompt) throws IOException {
+        while (true) {
+            String line = readString(prompt);
+            if (!fields.parseGenre(line)) {
+                rejected(line);
+                continue;
+            }
+            if (accepted(() -> fn.accept(fields.genre())))
+                return;
+        }
+    }
+
+    // Сообщение о недопустимом значении; вне интерактивного режима ввод прерывается
+    private void rejected(String line) {
+        String message = "Недопустимое значение: " + line;
+        System.out.println("Ошибка: " + message);
+        if (!interactive)
+            throw new ValueException(message);
+    }
+
+    // Передача значения потребителю; false, если потребитель отверг значение и ввод нужно повторить
+    private boolean accepted(Runnable consumer) {
+        try {
+            consumer.run();
+            return true;
+        } catch (ValueException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+            if (!interactive)
+                throw e;
+            return false;
+        }
+    }
 }
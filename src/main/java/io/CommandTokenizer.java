@@ -0,0 +1,104 @@
+package io;
+
+import java.util.Arrays;
+
+/**
+ * <p>Разбор строки команды на название команды и аргументы.</p>
+ * <p>Разделителями считаются те же символы, что и {@code \s} в регулярных
+ * выражениях: пробел, табуляция, перевод строки, вертикальная табуляция,
+ * перевод страницы и возврат каретки. Строка просматривается один раз
+ * без регулярных выражений и промежуточных коллекций.</p>
+ * <p>Массив аргументов переиспользуется между вызовами (для каждого
+ * количества аргументов - свой массив), а название команды, совпадающее
+ * с предыдущим, не создается заново. Поэтому результат разбора действителен
+ * только до следующего вызова {@link #tokenize(String)}; для хранения
+ * аргументов используйте {@link #copyArgs()}.</p>
+ */
+public final class CommandTokenizer {
+    private static final int CACHED_ARITY = 8;
+    private static final String[] NO_ARGS = new String[0];
+
+    private final String[][] argArrays = new String[CACHED_ARITY][];
+    private int[] starts = new int[CACHED_ARITY + 1];
+    private int[] ends = new int[CACHED_ARITY + 1];
+    private String name;
+    private String[] args = NO_ARGS;
+
+    /**
+     * Разбор строки команды.
+     * @param line строка команды
+     * @return {@code true}, если строка содержит команду;
+     *          {@code false}, если строка пуста или состоит из разделителей
+     */
+    public boolean tokenize(String line) {
+        int count = 0;
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            while (i < length && isSeparator(line.charAt(i)))
+                i++;
+            if (i == length)
+                break;
+            int start = i;
+            while (i < length && !isSeparator(line.charAt(i)))
+                i++;
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = i;
+            count++;
+        }
+        if (count == 0)
+            return false;
+
+        int nameLength = ends[0] - starts[0];
+        if (name == null || name.length() != nameLength || !line.regionMatches(starts[0], name, 0, nameLength))
+            name = line.substring(starts[0], ends[0]);
+        args = argArray(count - 1);
+        for (int t = 1; t < count; t++)
+            args[t - 1] = line.substring(starts[t], ends[t]);
+        return true;
+    }
+
+    /**
+     * @return название команды последней разобранной строки
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Аргументы команды последней разобранной строки.
+     * Массив переиспользуется при следующем разборе.
+     * @return аргументы команды
+     */
+    public String[] args() {
+        return args;
+    }
+
+    /**
+     * @return копия аргументов команды последней разобранной строки
+     */
+    public String[] copyArgs() {
+        return args.length == 0 ? NO_ARGS : args.clone();
+    }
+
+    // Массив аргументов заданной длины
+    private String[] argArray(int n) {
+        if (n == 0)
+            return NO_ARGS;
+        if (n > CACHED_ARITY)
+            return new String[n];
+        String[] result = argArrays[n - 1];
+        if (result == null)
+            result = argArrays[n - 1] = new String[n];
+        return result;
+    }
+
+    // Символы класса \s регулярных выражений
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,251 @@
+package io;
+
+import types.MusicGenre;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * <p>Разбор значений полей без упаковки чисел и без исключений.</p>
+ * <p>Методы разбора возвращают {@code true}, если строка содержит
+ * допустимое значение, и {@code false} - если нет (в том числе, если
+ * строка равна {@code null}). Результат последнего успешного разбора
+ * хранится в объекте и доступен до следующего разбора того же типа.</p>
+ * <p>Допустимые значения совпадают с допустимыми значениями
+ * {@link Long#parseLong(String)}, {@link Double#parseDouble(String)},
+ * {@link LocalDate#parse(CharSequence)} и {@link MusicGenre#parse(String)}.
+ * Распространенные записи (десятичные числа из цифр ASCII и даты вида
+ * ГГГГ-ММ-ДД) разбираются непосредственно, а редкие (экспоненциальная
+ * запись, даты с знаком года и т.п.) передаются стандартным методам.</p>
+ */
+public final class FieldParser {
+    // Степени 10, точно представимые в double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int DAYS_0000_TO_1970 = 719528;
+
+    private long longValue;
+    private double doubleValue;
+    private long epochDay;
+    private LocalDate date;
+    private MusicGenre genre;
+
+    /**
+     * Разбор целого числа.
+     * @param s строка
+     * @return {@code true}, если строка содержит число типа {@code long}
+     */
+    public boolean parseLong(String s) {
+        if (s == null || s.isEmpty())
+            return false;
+        int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        char first = s.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == length)
+                return false;
+        }
+        // Накопление в отрицательном диапазоне, чтобы разобрать Long.MIN_VALUE
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multLimit = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                return s.charAt(i) > 0x7F && parseLongSlow(s);
+            if (result < multLimit)
+                return false;
+            result *= 10;
+            if (result < limit + digit)
+                return false;
+            result -= digit;
+        }
+        longValue = negative ? result : -result;
+        return true;
+    }
+
+    /**
+     * Разбор числа с плавающей точкой.
+     * @param s строка
+     * @return {@code true}, если строка содержит число типа {@code double}
+     */
+    public boolean parseDouble(String s) {
+        if (s == null || s.isEmpty())
+            return false;
+        int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        char first = s.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;      // количество цифр после точки, -1 - точки нет
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction >= 0)
+                    fraction++;
+                if (mantissa > MAX_EXACT_MANTISSA)
+                    return parseDoubleSlow(s);
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                return parseDoubleSlow(s);
+            }
+        }
+        if (digits == 0 || fraction >= POWERS_OF_TEN.length)
+            return parseDoubleSlow(s);
+        // Частное двух точно представимых чисел округляется корректно
+        double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : (double) mantissa;
+        doubleValue = negative ? -value : value;
+        return true;
+    }
+
+    /**
+     * Разбор даты в формате ISO (ГГГГ-ММ-ДД).
+     * @param s строка
+     * @return {@code true}, если строка содержит допустимую дату
+     */
+    public boolean parseDate(String s) {
+        if (s == null)
+            return false;
+        if (s.length() != 10 || s.charAt(4) != '-' || s.charAt(7) != '-')
+            return !s.isEmpty() && (s.charAt(0) == '+' || s.charAt(0) == '-') && parseDateSlow(s);
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 7);
+        int day = digits(s, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month))
+            return false;
+        epochDay = epochDay(year, month, day);
+        date = null;
+        return true;
+    }
+
+    /**
+     * Разбор жанра.
+     * @param s строка
+     * @return {@code true}, если строка содержит допустимый жанр
+     */
+    public boolean parseGenre(String s) {
+        genre = s == null ? null : MusicGenre.find(s);
+        return genre != null;
+    }
+
+    /**
+     * @return результат последнего успешного {@link #parseLong(String)}
+     */
+    public long longValue() {
+        return longValue;
+    }
+
+    /**
+     * @return результат последнего успешного {@link #parseDouble(String)}
+     */
+    public double doubleValue() {
+        return doubleValue;
+    }
+
+    /**
+     * @return результат последнего успешного {@link #parseDate(String)} в днях от эпохи
+     */
+    public long epochDay() {
+        return epochDay;
+    }
+
+    /**
+     * @return результат последнего успешного {@link #parseDate(String)}
+     */
+    public LocalDate date() {
+        if (date == null)
+            date = LocalDate.ofEpochDay(epochDay);
+        return date;
+    }
+
+    /**
+     * @return результат последнего успешного {@link #parseGenre(String)}
+     */
+    public MusicGenre genre() {
+        return genre;
+    }
+
+    // Числа с цифрами, отличными от ASCII
+    private boolean parseLongSlow(String s) {
+        try {
+            longValue = Long.parseLong(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // Экспоненциальная и шестнадцатеричная запись, NaN, Infinity, длинные мантиссы
+    private boolean parseDoubleSlow(String s) {
+        try {
+            doubleValue = Double.parseDouble(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // Даты со знаком года
+    private boolean parseDateSlow(String s) {
+        try {
+            date = LocalDate.parse(s);
+            epochDay = date.toEpochDay();
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    // Число из цифр ASCII в позициях [from, to), -1 при других символах
+    private static int digits(String s, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Та же формула, что и в LocalDate.toEpochDay, для неотрицательных лет
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2)
+            total -= isLeapYear(year) ? 1 : 2;
+        return total - DAYS_0000_TO_1970;
+    }
+}
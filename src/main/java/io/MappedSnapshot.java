@@ -0,0 +1,272 @@
+package io;
+
+import types.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static io.BandSnapshot.*;
+
+/**
+ * <p>Двоичный снимок коллекции ({@link BandSnapshot}), отображенный в память.</p>
+ * <p>Файл отображается сегментами по 1 ГиБ с помощью {@link FileChannel#map},
+ * поля записей читаются непосредственно из отображенной области без создания
+ * объектов {@link MusicBand}. Открытие снимка не зависит от размера файла.</p>
+ * <p>Так как заголовок и записи выровнены, примитивные поля записи никогда
+ * не пересекают границу сегмента; строки могут ее пересекать.</p>
+ */
+public final class MappedSnapshot implements Iterable<MusicBand> {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = (int) (SEGMENT_SIZE - 1);
+    private static final MusicGenre[] genres = MusicGenre.values();
+
+    private final Path path;
+    private final ByteBuffer[] segments;
+    private final int count;
+    private final LocalDate initDate;
+    private final long stringsStart;
+    private long participantsSum;
+    private boolean participantsSummed = false;
+
+    private MappedSnapshot(Path path, ByteBuffer[] segments, int count, LocalDate initDate) {
+        this.path = path;
+        this.segments = segments;
+        this.count = count;
+        this.initDate = initDate;
+        this.stringsStart = HEADER_SIZE + (long) count * RECORD_SIZE;
+    }
+
+    /**
+     * Отображение файла снимка в память.
+     * Проверяется только заголовок, записи проверяются при чтении.
+     * @param path путь к файлу
+     * @return отображенный снимок
+     * @throws exceptions.DatabaseException если файл поврежден или имеет неверный формат
+     * @throws IOException при ошибках работы с файлом
+     */
+    public static MappedSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE)
+                throw corrupted(path);
+            ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long from = (long) i << SEGMENT_SHIFT;
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY,
+                        from, Math.min(SEGMENT_SIZE, size - from));
+                segments[i] = segment;
+            }
+            int count = checkHeader(segments[0], size, path);
+            int initDate = segments[0].getInt(H_INIT_DATE);
+            try {
+                return new MappedSnapshot(path, segments, count,
+                        initDate == NULL_DATE ? null : LocalDate.ofEpochDay(initDate));
+            } catch (DateTimeException e) {
+                throw corrupted(path);
+            }
+        }
+    }
+
+    /**
+     * @return путь к файлу снимка
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * @return количество групп в снимке
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return дата создания коллекции
+     */
+    public LocalDate initDate() {
+        return initDate;
+    }
+
+    /**
+     * @param i номер записи
+     * @return id группы
+     */
+    public int id(int i) {
+        return getInt(record(i) + R_ID);
+    }
+
+    /**
+     * @param i номер записи
+     * @return количество участников группы
+     */
+    public long participants(int i) {
+        return getLong(record(i) + R_PARTICIPANTS);
+    }
+
+    /**
+     * Сумма участников всех групп.
+     * Снимок не изменяется, поэтому сумма вычисляется один раз
+     * (параллельно, если записей больше порога {@link Parallel}).
+     * @return сумма участников
+     */
+    public synchronized long participantsSum() {
+        if (!participantsSummed) {
+            participantsSum = Parallel.range(0, count).mapToLong(this::participants).sum();
+            participantsSummed = true;
+        }
+        return participantsSum;
+    }
+
+    /**
+     * @param i номер записи
+     * @return дата основания группы в днях от эпохи
+     */
+    public int establishmentDay(int i) {
+        return getInt(record(i) + R_ESTABLISHMENT_DATE);
+    }
+
+    /**
+     * Запись строкового представления группы без создания объекта группы.
+     * Представление совпадает с {@link MusicBand#toString()}.
+     * @param i номер записи
+     * @param sb буфер, в который производится запись
+     * @return буфер {@code sb}
+     */
+    public StringBuilder describe(int i, StringBuilder sb) {
+        long r = record(i);
+        return MusicBand.describe(sb, getInt(r + R_ID), string(getLong(r + R_NAME)),
+                getLong(r + R_X), getDouble(r + R_Y),
+                date(r + R_CREATION_DATE), getLong(r + R_PARTICIPANTS),
+                date(r + R_ESTABLISHMENT_DATE), genre(r),
+                string(getLong(r + R_ALBUM)), getLong(r + R_TRACKS));
+    }
+
+    /**
+     * Создание объекта группы по записи снимка.
+     * @param i номер записи
+     * @return группа
+     * @throws IllegalStateException если запись повреждена
+     */
+    public MusicBand band(int i) {
+        long r = record(i);
+        try {
+            return MusicBand.restore(getInt(r + R_ID), string(getLong(r + R_NAME)),
+                    new Coordinates(getLong(r + R_X), getDouble(r + R_Y)),
+                    date(r + R_CREATION_DATE), getLong(r + R_PARTICIPANTS),
+                    date(r + R_ESTABLISHMENT_DATE), genre(r),
+                    new Album(string(getLong(r + R_ALBUM)), getLong(r + R_TRACKS)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(corrupted(path).getMessage(), e);
+        }
+    }
+
+    /**
+     * Итератор, создающий объекты групп по мере обхода записей.
+     * @return итератор групп
+     */
+    @Override
+    public Iterator<MusicBand> iterator() {
+        return new Iterator<MusicBand>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public MusicBand next() {
+                if (next >= count)
+                    throw new NoSuchElementException();
+                return band(next++);
+            }
+        };
+    }
+
+    private long record(int i) {
+        if (i < 0 || i >= count)
+            throw new IndexOutOfBoundsException("Номер записи: " + i);
+        return HEADER_SIZE + (long) i * RECORD_SIZE;
+    }
+
+    private MusicGenre genre(long r) {
+        int genre = segment(r + R_GENRE).get(offset(r + R_GENRE));
+        if (genre < 0 || genre >= genres.length)
+            throw new IllegalStateException(corrupted(path).getMessage());
+        return genres[genre];
+    }
+
+    // Дата, записанная в днях от эпохи
+    private LocalDate date(long pos) {
+        try {
+            return LocalDate.ofEpochDay(getInt(pos));
+        } catch (DateTimeException e) {
+            throw new IllegalStateException(corrupted(path).getMessage(), e);
+        }
+    }
+
+    private ByteBuffer segment(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)];
+    }
+
+    private static int offset(long pos) {
+        return (int) pos & SEGMENT_MASK;
+    }
+
+    private int getInt(long pos) {
+        return segment(pos).getInt(offset(pos));
+    }
+
+    private long getLong(long pos) {
+        return segment(pos).getLong(offset(pos));
+    }
+
+    private double getDouble(long pos) {
+        return segment(pos).getDouble(offset(pos));
+    }
+
+    // Чтение строки по смещению в области строк
+    private String string(long offset) {
+        long pos = stringsStart + offset;
+        if (offset < 0 || pos + Integer.BYTES > capacity())
+            throw new IllegalStateException(corrupted(path).getMessage());
+        byte[] length = new byte[Integer.BYTES];
+        getBytes(pos, length);
+        int n = ByteBuffer.wrap(length).getInt();
+        if (n < 0 || pos + Integer.BYTES + n > capacity())
+            throw new IllegalStateException(corrupted(path).getMessage());
+        byte[] bytes = new byte[n];
+        getBytes(pos + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Копирование байт, возможно, из нескольких сегментов
+    private void getBytes(long pos, byte[] dst) {
+        int done = 0;
+        while (done < dst.length) {
+            ByteBuffer segment = segment(pos).duplicate();
+            int off = offset(pos);
+            int n = Math.min(dst.length - done, segment.limit() - off);
+            segment.position(off);
+            segment.get(dst, done, n);
+            done += n;
+            pos += n;
+        }
+    }
+
+    private long capacity() {
+        ByteBuffer last = segments[segments.length - 1];
+        return ((long) (segments.length - 1) << SEGMENT_SHIFT) + last.limit();
+    }
+}
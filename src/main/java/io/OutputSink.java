@@ -0,0 +1,453 @@
+package io;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * <p>Буферизованный вывод результатов команд.</p>
+ * <p>В отличие от {@code System.out}, вывод не сбрасывается после каждой
+ * строки: данные кодируются в буфер и передаются в поток вывода при его
+ * заполнении или явном вызове {@link #flush()}. Строки формируются
+ * в переиспользуемом буфере {@link #line()} и кодируются в буфер вывода
+ * без создания промежуточных строк.</p>
+ * <p>Как и {@link java.io.PrintStream}, методы вывода не выбрасывают
+ * исключений: первая ошибка вывода запоминается и выбрасывается
+ * при вызове {@link #flush()}. Это позволяет выводить данные
+ * из лямбда-выражений.</p>
+ * <p>Так как {@code System.out} пишет в тот же поток, вывод через
+ * {@code OutputSink} должен сбрасываться до вывода через {@code System.out}.
+ * {@link db.CommandInvoker} сбрасывает общий вывод {@link #out()} после
+ * выполнения каждой команды. Другой способ - направить {@code System.out}
+ * в буфер вывода через {@link #stream()}.</p>
+ * <p>Поток может быть связан со своим выводом методом {@link #bind(OutputSink)}:
+ * тогда {@link #out()} в этом потоке возвращает связанный вывод,
+ * а {@code System.out}, замененный на {@link #routed(PrintStream)}, пишет
+ * в его буфер. Так сервер ({@link db.CommandServer}) собирает вывод команд
+ * каждого сеанса отдельно, не изменяя сами команды.</p>
+ */
+public final class OutputSink implements Flushable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+    private static OutputSink out;
+    private static final ThreadLocal<OutputSink> bound = new ThreadLocal<>();
+
+    private final OutputStream target;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    private final StringBuilder line = new StringBuilder(256);
+    private char[] chars = new char[256];
+    private CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private IOException error;
+    private OutputStream stream;
+    private PrintStream printer;
+
+    /**
+     * Создание вывода в поток байт.
+     * @param target поток вывода
+     * @param charset кодировка
+     * @param bufferSize размер буфера в байтах
+     */
+    public OutputSink(OutputStream target, Charset charset, int bufferSize) {
+        this.target = target;
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        bytes = ByteBuffer.allocate(Math.max(bufferSize, 64));
+    }
+
+    /**
+     * Общий вывод в стандартный поток вывода в кодировке по умолчанию,
+     * либо вывод, связанный с текущим потоком.
+     * @return вывод текущего потока
+     */
+    public static OutputSink out() {
+        OutputSink sink = bound.get();
+        return sink != null ? sink : shared();
+    }
+
+    private static synchronized OutputSink shared() {
+        if (out == null)
+            out = new OutputSink(new FileOutputStream(FileDescriptor.out), Charset.defaultCharset(), BUFFER_SIZE);
+        return out;
+    }
+
+    /**
+     * Связывание вывода с текущим потоком.
+     * @param sink вывод, либо {@code null}, чтобы вернуться к общему выводу
+     */
+    public static void bind(OutputSink sink) {
+        if (sink == null)
+            bound.remove();
+        else
+            bound.set(sink);
+    }
+
+    /**
+     * Поток вывода, направляющий текст в буфер вывода, связанного
+     * с текущим потоком, а в потоках без связанного вывода - в {@code console}.
+     * Текст кодируется в кодировке получателя: связанного вывода
+     * либо {@code console}.
+     * @param console поток вывода для потоков без связанного вывода
+     * @return поток вывода для {@link System#setOut(PrintStream)}
+     */
+    public static PrintStream routed(PrintStream console) {
+        return new Routed(console);
+    }
+
+    /**
+     * Очищает и возвращает переиспользуемый буфер строки.
+     * @return пустой буфер строки
+     */
+    public StringBuilder line() {
+        line.setLength(0);
+        return line;
+    }
+
+    /**
+     * Вывод строки из буфера и перевод строки.
+     * @param sb выводимая строка
+     */
+    public void println(StringBuilder sb) {
+        int length = sb.length();
+        sb.getChars(0, length, chars(length + LINE_SEPARATOR.length), 0);
+        writeLine(length);
+    }
+
+    /**
+     * Вывод строки и перевод строки.
+     * @param s выводимая строка
+     */
+    public void println(String s) {
+        int length = s.length();
+        s.getChars(0, length, chars(length + LINE_SEPARATOR.length), 0);
+        writeLine(length);
+    }
+
+    /**
+     * Вывод строкового представления объекта и перевод строки.
+     * @param obj выводимый объект
+     */
+    public void println(Object obj) {
+        println(String.valueOf(obj));
+    }
+
+    /**
+     * Вывод даты в формате ГГГГ-ММ-ДД и перевод строки.
+     * @param date выводимая дата
+     */
+    public void println(LocalDate date) {
+        println(appendDate(line(), date));
+    }
+
+    /**
+     * Поток байт, записываемых непосредственно в буфер вывода.
+     * Через него можно направить в буфер вывод {@link java.io.PrintStream}
+     * без автоматического сброса, сохранив порядок вывода. Байты должны
+     * быть в кодировке вывода.
+     * @return поток байт буфера вывода
+     */
+    public OutputStream stream() {
+        if (stream != null)
+            return stream;
+        return stream = new OutputStream() {
+            @Override
+            public void write(int b) {
+                if (!bytes.hasRemaining())
+                    drain();
+                bytes.put((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                while (len > 0) {
+                    if (!bytes.hasRemaining())
+                        drain();
+                    int n = Math.min(len, bytes.remaining());
+                    bytes.put(b, off, n);
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                OutputSink.this.flush();
+            }
+        };
+    }
+
+    // Вывод текста в буфер в кодировке вывода без автоматического сброса
+    private PrintStream printer() {
+        if (printer != null)
+            return printer;
+        try {
+            return printer = new PrintStream(stream(), false, encoder.charset().name());
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);    // кодировка уже используется кодировщиком
+        }
+    }
+
+    /**
+     * Передача накопленных данных в поток вывода.
+     * @throws IOException при ошибках вывода, в том числе произошедших
+     *          при выводе строк после предыдущего сброса
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        IOException e = error;
+        error = null;
+        if (e != null)
+            throw e;
+        target.flush();
+    }
+
+    /**
+     * Запись даты в формате {@link LocalDate#toString()} без создания строки.
+     * @param sb буфер, в который производится запись
+     * @param date дата
+     * @return буфер {@code sb}
+     */
+    public static StringBuilder appendDate(StringBuilder sb, LocalDate date) {
+        int year = date.getYear();
+        if (year < 0 || year > 9999)
+            return sb.append(date);
+        sb.append((char) ('0' + year / 1000))
+                .append((char) ('0' + year / 100 % 10))
+                .append((char) ('0' + year / 10 % 10))
+                .append((char) ('0' + year % 10))
+                .append('-');
+        appendTwoDigits(sb, date.getMonthValue()).append('-');
+        return appendTwoDigits(sb, date.getDayOfMonth());
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    // Кодирование строки из буфера символов и перевода строки в буфер вывода
+    private void writeLine(int length) {
+        System.arraycopy(LINE_SEPARATOR, 0, chars, length, LINE_SEPARATOR.length);
+        charBuffer.limit(length + LINE_SEPARATOR.length).position(0);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(charBuffer, bytes, true);
+            if (result.isOverflow())
+                drain();
+            else
+                break;
+        }
+        while (encoder.flush(bytes).isOverflow())
+            drain();
+    }
+
+    // Передача буфера вывода в поток без его сброса
+    private void drain() {
+        if (bytes.position() == 0)
+            return;
+        if (error == null) {
+            try {
+                target.write(bytes.array(), 0, bytes.position());
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        bytes.clear();
+    }
+
+    // Буфер символов не меньше заданной длины
+    private char[] chars(int length) {
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            charBuffer = CharBuffer.wrap(chars);
+        }
+        return chars;
+    }
+
+    // System.out, передающий вызовы выводу текущего потока: связанному либо консоли
+    private static final class Routed extends PrintStream {
+        private final PrintStream console;
+
+        Routed(PrintStream console) {
+            super(console, true);
+            this.console = console;
+        }
+
+        private PrintStream target() {
+            OutputSink sink = bound.get();
+            return sink != null ? sink.printer() : console;
+        }
+
+        @Override
+        public void flush() {
+            // связанный вывод сбрасывает его владелец
+            if (bound.get() == null)
+                console.flush();
+        }
+
+        @Override
+        public boolean checkError() {
+            return target().checkError();
+        }
+
+        @Override
+        public void write(int b) {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void print(boolean b) {
+            target().print(b);
+        }
+
+        @Override
+        public void print(char c) {
+            target().print(c);
+        }
+
+        @Override
+        public void print(int i) {
+            target().print(i);
+        }
+
+        @Override
+        public void print(long l) {
+            target().print(l);
+        }
+
+        @Override
+        public void print(float f) {
+            target().print(f);
+        }
+
+        @Override
+        public void print(double d) {
+            target().print(d);
+        }
+
+        @Override
+        public void print(char[] s) {
+            target().print(s);
+        }
+
+        @Override
+        public void print(String s) {
+            target().print(s);
+        }
+
+        @Override
+        public void print(Object obj) {
+            target().print(obj);
+        }
+
+        @Override
+        public void println() {
+            target().println();
+        }
+
+        @Override
+        public void println(boolean x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(char x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(int x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(long x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(float x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(double x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(char[] x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(String x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(Object x) {
+            target().println(x);
+        }
+
+        @Override
+        public PrintStream printf(String format, Object... args) {
+            target().printf(format, args);
+            return this;
+        }
+
+        @Override
+        public PrintStream printf(Locale l, String format, Object... args) {
+            target().printf(l, format, args);
+            return this;
+        }
+
+        @Override
+        public PrintStream format(String format, Object... args) {
+            target().format(format, args);
+            return this;
+        }
+
+        @Override
+        public PrintStream format(Locale l, String format, Object... args) {
+            target().format(l, format, args);
+            return this;
+        }
+
+        @Override
+        public PrintStream append(CharSequence csq) {
+            target().append(csq);
+            return this;
+        }
+
+        @Override
+        public PrintStream append(CharSequence csq, int start, int end) {
+            target().append(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public PrintStream append(char c) {
+            target().append(c);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io;
+
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * <p>Неинтерактивный {@link CheckedReader}, читающий строки из заранее
+ * загруженного списка.</p>
+ * <p>Позиция чтения задается методом {@link #seek(int)}, что позволяет
+ * каждой команде пакета читать строго свои строки ввода независимо от того,
+ * сколько строк прочитала предыдущая команда.</p>
+ */
+public class ScriptReader extends CheckedReader {
+    private final List<String> lines;
+    private int next = 0;
+
+    /**
+     * @param lines строки ввода
+     */
+    public ScriptReader(List<String> lines) {
+        super(new StringReader(""), false);
+        this.lines = lines;
+    }
+
+    /**
+     * Установка номера следующей читаемой строки.
+     * @param line номер строки в списке
+     */
+    public void seek(int line) {
+        next = line;
+    }
+
+    /**
+     * Чтение следующей строки списка.
+     * @return строка, либо {@code null}, если строки закончились
+     */
+    @Override
+    public String readLine() {
+        return next < lines.size() ? lines.get(next++) : null;
+    }
+}
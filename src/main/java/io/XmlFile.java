@@ -1,16 +1,53 @@
 package io;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.MarshalException;
 import javax.xml.bind.Marshaller;
+import javax.xml.bind.UnmarshalException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * Класс предоставляет методы сохранения в файл и загрузки из файла
  * данных с помощью JAXB.
+ * Объекты {@link JAXBContext} создаются один раз для каждого класса,
+ * а объекты {@link Marshaller} и {@link Unmarshaller} переиспользуются
+ * в пределах потока, их создавшего.
  */
 public class XmlFile {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private static final ConcurrentHashMap<Class<?>, JAXBContext> contexts = new ConcurrentHashMap<>();
+    private static final ThreadLocal<HashMap<Class<?>, Marshaller>> marshallers =
+            ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<HashMap<Class<?>, Marshaller>> fragmentMarshallers =
+            ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<HashMap<Class<?>, Unmarshaller>> unmarshallers =
+            ThreadLocal.withInitial(HashMap::new);
+
     /**
      * Сохранение свойств указанного объекта в файл.
      * @param obj объект сериализации
@@ -20,10 +57,7 @@ public class XmlFile {
      *          или другие неожиданные ошибки при работе JAXB
      */
     public static <T> void marshall(T obj, Path path) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(obj.getClass());
-        Marshaller marshaller = context.createMarshaller();
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-        marshaller.marshal(obj, path.toFile());
+        marshaller(obj.getClass()).marshal(obj, path.toFile());
     }
 
     /**
@@ -37,8 +71,148 @@ public class XmlFile {
      */
     @SuppressWarnings("unchecked")
     public static <T> T unmarshall(Class<T> tClass, Path path) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(tClass);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
-        return (T) unmarshaller.unmarshal(path.toFile());
+        return (T) unmarshaller(tClass).unmarshal(path.toFile());
+    }
+
+    /**
+     * Потоковое сохранение элементов в указанный файл.
+     * Элементы сериализуются по одному через StAX в буферизованный
+     * канал. Файл записывается атомарно с помощью {@link AtomicFile},
+     * поэтому при сбое во время записи прежнее содержимое файла не теряется.
+     * @param path путь к файлу
+     * @param root имя корневого элемента
+     * @param attributes атрибуты корневого элемента
+     * @param element имя дочерних элементов
+     * @param eClass объект класса дочерних элементов
+     * @param items сохраняемые элементы
+     * @param <E> тип дочерних элементов
+     * @throws IOException при ошибках работы с файлом
+     * @throws JAXBException если классы данных с неверными JAXB аннотациями
+     *          или другие неожиданные ошибки при работе JAXB
+     */
+    public static <E> void marshallEach(Path path, String root, Map<String, String> attributes,
+                                        String element, Class<E> eClass,
+                                        Iterator<? extends E> items) throws IOException, JAXBException {
+        AtomicFile.write(path, channel -> {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE);
+            writeDocument(out, root, attributes, element, eClass, items);
+            out.flush();
+        });
+    }
+
+    // Запись документа из корневого элемента с атрибутами и дочерних элементов
+    private static <E> void writeDocument(OutputStream out, String root, Map<String, String> attributes,
+                                          String element, Class<E> eClass,
+                                          Iterator<? extends E> items) throws JAXBException {
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement(root);
+            for (Map.Entry<String, String> attribute : attributes.entrySet())
+                writer.writeAttribute(attribute.getKey(), attribute.getValue());
+            Marshaller marshaller = fragmentMarshaller(eClass);
+            QName name = new QName(element);
+            while (items.hasNext()) {
+                writer.writeCharacters("\n    ");
+                marshaller.marshal(new JAXBElement<E>(name, eClass, items.next()), writer);
+            }
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new MarshalException(e);
+        }
+    }
+
+    /**
+     * Потоковая загрузка элементов из указанного файла.
+     * Файл читается с помощью StAX, каждый дочерний элемент корневого
+     * элемента с именем {@code element} десериализуется отдельно и сразу
+     * передается получателю, поэтому весь документ в памяти не строится.
+     * @param path путь к файлу
+     * @param element имя дочерних элементов
+     * @param eClass объект класса дочерних элементов
+     * @param root функция создания результата по корневому элементу
+     * @param sink получатель десериализованных элементов
+     * @param <T> тип результата
+     * @param <E> тип дочерних элементов
+     * @return результат, созданный функцией {@code root}
+     * @throws UnmarshalException если файл поврежден или имеет неверный формат
+     * @throws JAXBException если классы данных с неверными JAXB аннотациями
+     *          или другие неожиданные ошибки при работе JAXB
+     */
+    public static <T, E> T unmarshallEach(Path path, String element, Class<E> eClass,
+                                          Function<XMLStreamReader, T> root,
+                                          BiConsumer<T, E> sink) throws JAXBException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            try {
+                reader.nextTag();
+                T result = root.apply(reader);
+                Unmarshaller unmarshaller = unmarshaller(eClass);
+                reader.nextTag();
+                while (reader.isStartElement()) {
+                    if (!element.equals(reader.getLocalName()))
+                        throw new UnmarshalException("Неожиданный элемент: " + reader.getLocalName());
+                    sink.accept(result, unmarshaller.unmarshal(reader, eClass).getValue());
+                    while (!reader.isStartElement() && !reader.isEndElement())
+                        reader.next();
+                }
+                return result;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException | IllegalArgumentException | IllegalStateException e) {
+            throw new UnmarshalException(e);
+        }
+    }
+
+    // Возвращает JAXBContext для класса, создавая его при первом обращении
+    private static JAXBContext context(Class<?> tClass) throws JAXBException {
+        JAXBContext context = contexts.get(tClass);
+        if (context == null) {
+            context = JAXBContext.newInstance(tClass);
+            JAXBContext existing = contexts.putIfAbsent(tClass, context);
+            if (existing != null)
+                context = existing;
+        }
+        return context;
+    }
+
+    // Возвращает Marshaller текущего потока для класса
+    private static Marshaller marshaller(Class<?> tClass) throws JAXBException {
+        HashMap<Class<?>, Marshaller> cache = marshallers.get();
+        Marshaller marshaller = cache.get(tClass);
+        if (marshaller == null) {
+            marshaller = context(tClass).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            cache.put(tClass, marshaller);
+        }
+        return marshaller;
+    }
+
+    // Возвращает Marshaller текущего потока для записи фрагментов документа
+    private static Marshaller fragmentMarshaller(Class<?> tClass) throws JAXBException {
+        HashMap<Class<?>, Marshaller> cache = fragmentMarshallers.get();
+        Marshaller marshaller = cache.get(tClass);
+        if (marshaller == null) {
+            marshaller = context(tClass).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+            cache.put(tClass, marshaller);
+        }
+        return marshaller;
+    }
+
+    // Возвращает Unmarshaller текущего потока для класса
+    private static Unmarshaller unmarshaller(Class<?> tClass) throws JAXBException {
+        HashMap<Class<?>, Unmarshaller> cache = unmarshallers.get();
+        Unmarshaller unmarshaller = cache.get(tClass);
+        if (unmarshaller == null) {
+            unmarshaller = context(tClass).createUnmarshaller();
+            cache.put(tClass, unmarshaller);
+        }
+        return unmarshaller;
     }
 }
@@ -26,7 +26,6 @@ public class Album implements Comparable<Album>, UnmarshalCheckable {
      * @throws  ValueException если name пустая строка или {@code null};
      *          если tracks меньше или равно {@code 0} или {@code null}
      */
-    @SuppressWarnings("unused")
     public Album(String name, Long tracks) {
         setName(name);
         setTracks(tracks);
@@ -43,7 +42,7 @@ public class Album implements Comparable<Album>, UnmarshalCheckable {
         reader.printPrompt("  Лучший альбом:\n");
         Album result = new Album();
         reader.readString(result::setName, "    Название альбома: ");
-        reader.readValue(Long.class, result::setTracks, "    Количество треков: ");
+        reader.readLong(result::setTracks, "    Количество треков: ");
         return result;
     }
 
@@ -68,7 +67,7 @@ public class Album implements Comparable<Album>, UnmarshalCheckable {
      * @param   name название альбома
      * @throws  ValueException если поле равно {@code null} или пустая строка
      */
-    public void setName(String name) {
+    void setName(String name) {
         if (name == null || name.isEmpty())
             throw new ValueException("Имя альбома не может быть пустым");
         this.name = name;
@@ -80,7 +79,7 @@ public class Album implements Comparable<Album>, UnmarshalCheckable {
      * @throws  ValueException если поле равно {@code null}
      *          или значение поля меньше или равно {@code 0}
      */
-    public void setTracks(Long tracks) {
+    void setTracks(Long tracks) {
         if (tracks == null || tracks <= 0)
             throw new ValueException("Количество треков в альбоме должно быть больше нуля");
         this.tracks = tracks;
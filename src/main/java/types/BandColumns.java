@@ -0,0 +1,427 @@
+package types;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+/**
+ * <p>Столбцовое хранилище групп.</p>
+ * <p>Поля групп хранятся в массивах примитивов по одному массиву на поле:
+ * id, даты в днях от эпохи, координаты, количество участников и треков,
+ * номер жанра. Названия групп и альбомов хранятся в общей области строк
+ * в кодировке UTF-8 (длина в формате varint и байты строки), а в столбцах
+ * хранятся их смещения. Объекты {@link MusicBand} создаются только при
+ * обращении к элементу списка и не хранятся.</p>
+ * <p>Группы с датами вне диапазона {@code int} дней от эпохи (дальше
+ * 5 миллионов лет) не помещаются в столбцы и хранятся объектами; в столбцах
+ * для них записываются приведенные к диапазону даты.</p>
+ * <p>Строки удаленных и замененных групп остаются в области строк, пока
+ * их объем не превысит половину области; тогда область уплотняется.
+ * Уплотнение создает новый массив, поэтому копия хранилища ({@link #copy()}),
+ * разделяющая с ним область строк, остается согласованной.</p>
+ */
+final class BandColumns extends BandStore {
+    private static final MusicGenre[] genres = MusicGenre.values();
+    private static final byte WIDE = -1;                // номер жанра группы, хранящейся объектом
+    private static final int MIN_COMPACTED_POOL = 1 << 16;
+
+    private int size = 0;
+    private int[] ids;
+    private int[] creationDays;
+    private int[] establishmentDays;
+    private long[] xs;
+    private double[] ys;
+    private long[] participants;
+    private long[] tracks;
+    private byte[] genreOrdinals;
+    private int[] names;        // смещения названий групп в области строк
+    private int[] albums;       // смещения названий альбомов в области строк
+
+    private byte[] pool;
+    private int poolUsed = 0;
+    private int poolDead = 0;   // байты строк удаленных групп
+    private HashMap<Integer, MusicBand> wide = new HashMap<>();
+
+    /**
+     * Создание пустого хранилища.
+     */
+    BandColumns() {
+        allocate(16);
+        pool = new byte[1024];
+    }
+
+    /**
+     * Создание хранилища с заданными группами.
+     * @param bands группы с установленными id
+     */
+    BandColumns(Collection<? extends MusicBand> bands) {
+        allocate(Math.max(bands.size(), 16));
+        pool = new byte[1024];
+        for (MusicBand band : bands)
+            add(band);
+    }
+
+    /**
+     * Копия хранилища. Столбцы копируются, область строк разделяется:
+     * строки только дописываются в ее конец, а уплотнение создает новый массив.
+     * @return копия
+     */
+    @Override
+    BandColumns copy() {
+        BandColumns result = new BandColumns(this);
+        result.ids = Arrays.copyOf(ids, size);
+        result.creationDays = Arrays.copyOf(creationDays, size);
+        result.establishmentDays = Arrays.copyOf(establishmentDays, size);
+        result.xs = Arrays.copyOf(xs, size);
+        result.ys = Arrays.copyOf(ys, size);
+        result.participants = Arrays.copyOf(participants, size);
+        result.tracks = Arrays.copyOf(tracks, size);
+        result.genreOrdinals = Arrays.copyOf(genreOrdinals, size);
+        result.names = Arrays.copyOf(names, size);
+        result.albums = Arrays.copyOf(albums, size);
+        result.size = size;
+        result.wide = new HashMap<>(wide);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    BandColumns create(Collection<? extends MusicBand> bands) {
+        return new BandColumns(bands);
+    }
+
+    // Пустая копия с общей областью строк
+    private BandColumns(BandColumns source) {
+        pool = source.pool;
+        poolUsed = source.poolUsed;
+        poolDead = source.poolDead;
+    }
+
+    /**
+     * @return количество групп
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Создание объекта группы по столбцам.
+     * @param i номер группы
+     * @return группа
+     */
+    @Override
+    public MusicBand get(int i) {
+        check(i, size);
+        if (genreOrdinals[i] == WIDE)
+            return wide.get(ids[i]);
+        return MusicBand.restore(ids[i], string(names[i]), new Coordinates(xs[i], ys[i]),
+                LocalDate.ofEpochDay(creationDays[i]), participants[i],
+                LocalDate.ofEpochDay(establishmentDays[i]), genres[genreOrdinals[i]],
+                new Album(string(albums[i]), tracks[i]));
+    }
+
+    /**
+     * @param i номер группы
+     * @return id группы
+     */
+    @Override
+    int id(int i) {
+        check(i, size);
+        return ids[i];
+    }
+
+    /**
+     * Замена группы.
+     * @param i номер группы
+     * @param band новая группа
+     * @return прежняя группа
+     */
+    @Override
+    public MusicBand set(int i, MusicBand band) {
+        MusicBand old = get(i);
+        release(i);
+        write(i, band);
+        compactIfNeeded();
+        return old;
+    }
+
+    /**
+     * Вставка группы.
+     * @param i номер, который получит группа
+     * @param band группа с установленным id
+     */
+    @Override
+    public void add(int i, MusicBand band) {
+        check(i, size + 1);
+        ensureCapacity(size + 1);
+        if (i < size)
+            move(i, i + 1, size - i);
+        size++;
+        write(i, band);
+        modCount++;
+    }
+
+    /**
+     * Удаление группы.
+     * @param i номер группы
+     * @return удаленная группа
+     */
+    @Override
+    public MusicBand remove(int i) {
+        MusicBand old = get(i);
+        release(i);
+        move(i + 1, i, size - i - 1);
+        size--;
+        modCount++;
+        compactIfNeeded();
+        return old;
+    }
+
+    /**
+     * Удаление групп, удовлетворяющих предикату, за один проход.
+     * @param filter предикат
+     * @return {@code true}, если удаление произведено
+     */
+    @Override
+    public boolean removeIf(Predicate<? super MusicBand> filter) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (filter.test(get(i)))
+                release(i);
+            else
+                move(i, kept++, 1);
+        }
+        return truncate(kept);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean removePositions(int[] positions) {
+        if (positions.length == 0)
+            return false;
+        int kept = positions[0];
+        for (int k = 0; k < positions.length; k++) {
+            int p = positions[k];
+            int next = k + 1 < positions.length ? positions[k + 1] : size;
+            release(p);
+            move(p + 1, kept, next - p - 1);
+            kept += next - p - 1;
+        }
+        return truncate(kept);
+    }
+
+    /**
+     * Удаление всех групп.
+     */
+    @Override
+    public void clear() {
+        allocate(16);
+        pool = new byte[1024];
+        poolUsed = 0;
+        poolDead = 0;
+        wide = new HashMap<>();
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Резервирование места под группы.
+     * @param capacity необходимое количество групп
+     */
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity <= ids.length)
+            return;
+        resize(Math.max(capacity, ids.length + (ids.length >> 1)));
+    }
+
+    private void resize(int length) {
+        ids = Arrays.copyOf(ids, length);
+        creationDays = Arrays.copyOf(creationDays, length);
+        establishmentDays = Arrays.copyOf(establishmentDays, length);
+        xs = Arrays.copyOf(xs, length);
+        ys = Arrays.copyOf(ys, length);
+        participants = Arrays.copyOf(participants, length);
+        tracks = Arrays.copyOf(tracks, length);
+        genreOrdinals = Arrays.copyOf(genreOrdinals, length);
+        names = Arrays.copyOf(names, length);
+        albums = Arrays.copyOf(albums, length);
+    }
+
+    /**
+     * Освобождение неиспользуемого места в столбцах и области строк.
+     */
+    @Override
+    void trimToSize() {
+        resize(size);
+        pool = Arrays.copyOf(pool, poolUsed);
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        creationDays = new int[capacity];
+        establishmentDays = new int[capacity];
+        xs = new long[capacity];
+        ys = new double[capacity];
+        participants = new long[capacity];
+        tracks = new long[capacity];
+        genreOrdinals = new byte[capacity];
+        names = new int[capacity];
+        albums = new int[capacity];
+    }
+
+    // Запись группы в столбцы
+    private void write(int i, MusicBand band) {
+        ids[i] = band.getId();
+        long creationDay = band.getCreationDate().toEpochDay();
+        long establishmentDay = band.getEstablishmentDate().toEpochDay();
+        creationDays[i] = EstablishmentIndex.day(band.getCreationDate());
+        establishmentDays[i] = EstablishmentIndex.day(band.getEstablishmentDate());
+        xs[i] = band.getCoordinates().getX();
+        ys[i] = band.getCoordinates().getY();
+        participants[i] = band.getNumberOfParticipants();
+        tracks[i] = band.getBestAlbum().getTracks();
+        if (creationDay != creationDays[i] || establishmentDay != establishmentDays[i]) {
+            genreOrdinals[i] = WIDE;
+            wide.put(band.getId(), band);
+            names[i] = -1;
+            albums[i] = -1;
+            return;
+        }
+        genreOrdinals[i] = (byte) band.getGenre().ordinal();
+        names[i] = intern(band.getName());
+        albums[i] = intern(band.getBestAlbum().getName());
+    }
+
+    // Учет строк удаляемой группы
+    private void release(int i) {
+        if (genreOrdinals[i] == WIDE) {
+            wide.remove(ids[i]);
+            return;
+        }
+        poolDead += stringSize(pool, names[i]) + stringSize(pool, albums[i]);
+    }
+
+    // Перенос count групп с позиции from на позицию to
+    private void move(int from, int to, int count) {
+        if (count <= 0 || from == to)
+            return;
+        System.arraycopy(ids, from, ids, to, count);
+        System.arraycopy(creationDays, from, creationDays, to, count);
+        System.arraycopy(establishmentDays, from, establishmentDays, to, count);
+        System.arraycopy(xs, from, xs, to, count);
+        System.arraycopy(ys, from, ys, to, count);
+        System.arraycopy(participants, from, participants, to, count);
+        System.arraycopy(tracks, from, tracks, to, count);
+        System.arraycopy(genreOrdinals, from, genreOrdinals, to, count);
+        System.arraycopy(names, from, names, to, count);
+        System.arraycopy(albums, from, albums, to, count);
+    }
+
+    // Отбрасывание групп после первых kept
+    private boolean truncate(int kept) {
+        if (kept == size)
+            return false;
+        size = kept;
+        modCount++;
+        compactIfNeeded();
+        return true;
+    }
+
+    // Запись строки в конец области строк
+    private int intern(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int needed = varintSize(bytes.length) + bytes.length;
+        if (poolUsed + (long) needed > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Переполнение области строк");
+        if (poolUsed + needed > pool.length)
+            pool = Arrays.copyOf(pool, (int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max(poolUsed + needed, (long) pool.length * 2)));
+        int offset = poolUsed;
+        int length = bytes.length;
+        while (length >= 0x80) {
+            pool[poolUsed++] = (byte) (length | 0x80);
+            length >>>= 7;
+        }
+        pool[poolUsed++] = (byte) length;
+        System.arraycopy(bytes, 0, pool, poolUsed, bytes.length);
+        poolUsed += bytes.length;
+        return offset;
+    }
+
+    private String string(int offset) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = pool[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return new String(pool, offset, length, StandardCharsets.UTF_8);
+    }
+
+    // Размер строки в области строк вместе с длиной
+    private static int stringSize(byte[] pool, int offset) {
+        int length = 0;
+        int shift = 0;
+        int start = offset;
+        byte b;
+        do {
+            b = pool[offset++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return offset - start + length;
+    }
+
+    private static int varintSize(int value) {
+        int result = 1;
+        while (value >= 0x80) {
+            value >>>= 7;
+            result++;
+        }
+        return result;
+    }
+
+    // Уплотнение области строк, если больше половины ее занято удаленными строками
+    private void compactIfNeeded() {
+        if (poolUsed < MIN_COMPACTED_POOL || poolDead <= poolUsed / 2)
+            return;
+        byte[] old = pool;
+        int oldUsed = poolUsed;
+        pool = new byte[Math.max(1024, (oldUsed - poolDead) + (oldUsed - poolDead) / 2)];
+        poolUsed = 0;
+        poolDead = 0;
+        for (int i = 0; i < size; i++) {
+            if (genreOrdinals[i] == WIDE)
+                continue;
+            names[i] = copyString(old, names[i]);
+            albums[i] = copyString(old, albums[i]);
+        }
+    }
+
+    // Перенос строки из старой области строк в текущую
+    private int copyString(byte[] from, int offset) {
+        int n = stringSize(from, offset);
+        if (poolUsed + n > pool.length)
+            pool = Arrays.copyOf(pool, Math.max(poolUsed + n, pool.length * 2));
+        System.arraycopy(from, offset, pool, poolUsed, n);
+        int result = poolUsed;
+        poolUsed += n;
+        return result;
+    }
+
+    private static void check(int i, int bound) {
+        if (i < 0 || i >= bound)
+            throw new IndexOutOfBoundsException("Номер группы: " + i);
+    }
+}
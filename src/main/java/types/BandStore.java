@@ -0,0 +1,55 @@
+package types;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * <p>Хранилище групп, не хранящее объекты групп.</p>
+ * <p>Группы хранятся в виде значений полей, а объекты {@link MusicBand}
+ * создаются при обращении к элементу списка. Группы упорядочены по id,
+ * поэтому группа находится двоичным поиском по {@link #id(int)} без создания
+ * объектов. Реализации: {@link BandColumns} и {@link OffHeapBands}.</p>
+ */
+abstract class BandStore extends AbstractList<MusicBand> implements RandomAccess {
+    /**
+     * @param i номер группы
+     * @return id группы
+     */
+    abstract int id(int i);
+
+    /**
+     * Копия хранилища, которую можно обходить в другом потоке,
+     * пока изменяется исходное хранилище.
+     * @return копия
+     */
+    abstract BandStore copy();
+
+    /**
+     * Создание хранилища того же вида с заданными группами.
+     * @param bands группы с установленными id
+     * @return новое хранилище
+     */
+    abstract BandStore create(Collection<? extends MusicBand> bands);
+
+    /**
+     * Удаление групп с заданными номерами без создания объектов групп.
+     * Оставшиеся группы, начиная с первой удаляемой, сдвигаются непрерывными
+     * участками, поэтому время пропорционально количеству групп после
+     * первой удаляемой.
+     * @param positions номера удаляемых групп в порядке возрастания
+     * @return {@code true}, если удаление произведено
+     */
+    abstract boolean removePositions(int[] positions);
+
+    /**
+     * Резервирование места под группы.
+     * @param capacity необходимое количество групп
+     */
+    abstract void ensureCapacity(int capacity);
+
+    /**
+     * Освобождение неиспользуемого места.
+     */
+    abstract void trimToSize();
+}
@@ -5,6 +5,7 @@ import io.UnmarshalCheckable;
 import exceptions.ValueException;
 
 import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlElement;
 import java.io.IOException;
 import java.util.Objects;
 
@@ -23,7 +24,6 @@ public class Coordinates implements UnmarshalCheckable {
      * @param   y координата y
      * @throws  ValueException если поле равно {@code null}
      */
-    @SuppressWarnings("unused")
     public Coordinates(Long x, double y) {
         setX(x);
         setY(y);
@@ -39,8 +39,8 @@ public class Coordinates implements UnmarshalCheckable {
     public static Coordinates fromReader(CheckedReader reader) throws IOException {
         reader.printPrompt("  Координаты:\n");
         Coordinates result = new Coordinates();
-        reader.readValue(Long.class, result::setX, "    x: ");
-        reader.readValue(double.class, result::setY, "    y: ");
+        reader.readLong(result::setX, "    x: ");
+        reader.readDouble(result::setY, "    y: ");
         return result;
     }
 
@@ -48,6 +48,7 @@ public class Coordinates implements UnmarshalCheckable {
      * @return x
      */
     @SuppressWarnings("unused")
+    @XmlElement
     public Long getX() {
         return x;
     }
@@ -56,6 +57,7 @@ public class Coordinates implements UnmarshalCheckable {
      * @return y
      */
     @SuppressWarnings("unused")
+    @XmlElement
     public double getY() {
         return y;
     }
@@ -64,13 +66,13 @@ public class Coordinates implements UnmarshalCheckable {
      *
      * @param x координата x
      */
-    public void setX(Long x) {
+    void setX(Long x) {
         if (x == null)
             throw new ValueException("Координата х не может быть null");
         this.x = x;
     }
 
-    public void setY(double y) {
+    void setY(double y) {
         this.y = y;
     }
 
@@ -0,0 +1,175 @@
+package types;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Вторичный индекс групп по дате основания.</p>
+ * <p>Индекс хранит упорядоченный массив ключей {@code long}, в старших
+ * 32 битах которых записана дата основания в днях от эпохи, а в младших -
+ * id группы. Так как id положительны, порядок ключей совпадает с порядком
+ * пар (дата основания, id), а ключи уникальны. Даты за пределами диапазона
+ * {@code int} (дальше 5 миллионов лет от эпохи) приводятся к его границам
+ * и упорядочиваются между собой по id.</p>
+ * <p>Ключи, добавленные при загрузке коллекции, дописываются в конец массива,
+ * а массив сортируется один раз при первом обращении к индексу
+ * (параллельно, если ключей больше порога {@link Parallel}). Индекс может
+ * читаться несколькими потоками одновременно, поэтому отложенная сортировка
+ * синхронизирована.</p>
+ */
+final class EstablishmentIndex {
+    /**
+     * Действие над элементом индекса.
+     */
+    interface Visitor {
+        /**
+         * @param day дата основания в днях от эпохи, приведенная к диапазону {@code int}
+         * @param id id группы
+         */
+        void accept(int day, int id);
+    }
+
+    private long[] keys = new long[16];
+    private int size = 0;
+    private boolean sorted = true;
+
+    /**
+     * Добавление группы в конец индекса без поддержания порядка.
+     * @param band группа
+     */
+    void append(MusicBand band) {
+        if (size == keys.length)
+            keys = Arrays.copyOf(keys, size * 2);
+        long key = key(band);
+        if (size > 0 && keys[size - 1] > key)
+            sorted = false;
+        keys[size++] = key;
+    }
+
+    /**
+     * Добавление группы с сохранением порядка индекса.
+     * @param band группа
+     */
+    void add(MusicBand band) {
+        ensureSorted();
+        long key = key(band);
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        if (i >= 0)
+            return;
+        i = -i - 1;
+        if (size == keys.length)
+            keys = Arrays.copyOf(keys, size * 2);
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        keys[i] = key;
+        size++;
+    }
+
+    /**
+     * Удаление группы из индекса.
+     * @param band группа
+     */
+    void remove(MusicBand band) {
+        ensureSorted();
+        int i = Arrays.binarySearch(keys, 0, size, key(band));
+        if (i < 0)
+            return;
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        size--;
+    }
+
+    /**
+     * Удаление нескольких групп за один проход по части индекса,
+     * начинающейся с наименьшего удаляемого ключа.
+     * @param bands удаляемые группы
+     */
+    void removeAll(List<MusicBand> bands) {
+        if (bands.isEmpty())
+            return;
+        ensureSorted();
+        long[] removed = new long[bands.size()];
+        for (int i = 0; i < removed.length; i++)
+            removed[i] = key(bands.get(i));
+        Parallel.sort(removed, 0, removed.length);
+        // Ключи до первого удаляемого остаются на месте
+        int start = lowerBound(removed[0]);
+        int kept = start;
+        int r = 0;
+        for (int i = start; i < size; i++) {
+            while (r < removed.length && removed[r] < keys[i])
+                r++;
+            if (r < removed.length && removed[r] == keys[i])
+                continue;
+            keys[kept++] = keys[i];
+        }
+        size = kept;
+    }
+
+    /**
+     * Удаление всех групп из индекса.
+     */
+    void clear() {
+        size = 0;
+        sorted = true;
+        if (keys.length > 16)
+            keys = new long[16];
+    }
+
+    /**
+     * Обход всех групп в порядке убывания даты основания.
+     * @param action действие над элементом индекса
+     */
+    void forEachDescending(Visitor action) {
+        ensureSorted();
+        for (int i = size - 1; i >= 0; i--)
+            action.accept(day(keys[i]), (int) keys[i]);
+    }
+
+    /**
+     * Обход групп с датой основания в заданном диапазоне
+     * в порядке возрастания даты основания.
+     * @param from начало диапазона (включительно)
+     * @param to конец диапазона (включительно)
+     * @param action действие над элементом индекса
+     */
+    void forEachBetween(LocalDate from, LocalDate to, Visitor action) {
+        ensureSorted();
+        if (from.isAfter(to))
+            return;
+        int i = lowerBound((long) day(from) << 32);
+        long end = (long) day(to) << 32 | Integer.MAX_VALUE;
+        for (; i < size && keys[i] <= end; i++)
+            action.accept(day(keys[i]), (int) keys[i]);
+    }
+
+    // Позиция первого ключа, не меньшего key
+    private int lowerBound(long key) {
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private synchronized void ensureSorted() {
+        if (!sorted) {
+            Parallel.sort(keys, 0, size);
+            sorted = true;
+        }
+    }
+
+    private static long key(MusicBand band) {
+        return (long) day(band.getEstablishmentDate()) << 32 | band.getId();
+    }
+
+    // Дата в днях от эпохи, приведенная к диапазону int
+    static int day(LocalDate date) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+
+    // Проверка, приведена ли дата к границе диапазона int
+    static boolean isClamped(int day) {
+        return day == Integer.MIN_VALUE || day == Integer.MAX_VALUE;
+    }
+
+    private static int day(long key) {
+        return (int) (key >> 32);
+    }
+}
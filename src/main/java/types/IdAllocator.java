@@ -0,0 +1,65 @@
+package types;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Распределитель id групп коллекции {@link MusicBandCollection}.</p>
+ * <p>Хранит следующий свободный id - значение, большее всех выданных
+ * и всех известных распределителю id. Методы не требуют блокировок
+ * (сравнение с обменом над {@link AtomicLong}) и могут вызываться
+ * из нескольких потоков одновременно: выданные id никогда не повторяются.</p>
+ * <p>Метод {@link #reserve(int) reserve} выдает сразу непрерывный диапазон id,
+ * например, для назначения id группам, подготавливаемым несколькими
+ * потоками при массовом добавлении. Метод {@link #observe(int) observe}
+ * учитывает id загруженных групп, так что после загрузки коллекции новые id
+ * больше наибольшего загруженного. Удаление групп и очистка коллекции
+ * распределитель не сбрасывают.</p>
+ */
+public final class IdAllocator {
+    private final AtomicLong next = new AtomicLong(1);     // Может превышать Integer.MAX_VALUE, когда id исчерпаны
+
+    /**
+     * Выдача нового id.
+     * @return id
+     * @throws IllegalStateException если свободные id исчерпаны
+     */
+    public int next() {
+        return reserve(1);
+    }
+
+    /**
+     * Выдача непрерывного диапазона id {@code [first, first + count)}.
+     * @param count количество id
+     * @return первый id диапазона
+     * @throws IllegalArgumentException если {@code count} меньше 1
+     * @throws IllegalStateException если свободных id меньше {@code count}
+     */
+    public int reserve(int count) {
+        if (count < 1)
+            throw new IllegalArgumentException("Количество id должно быть больше нуля: " + count);
+        while (true) {
+            long first = next.get();
+            if (first + count - 1 > Integer.MAX_VALUE)
+                throw new IllegalStateException("Исчерпаны свободные id");
+            if (next.compareAndSet(first, first + count))
+                return (int) first;
+        }
+    }
+
+    /**
+     * Учет id, назначенного группе вне распределителя (например, при загрузке
+     * коллекции): следующие выданные id будут больше него.
+     * @param id id группы
+     */
+    public void observe(int id) {
+        if (id >= next.get())
+            next.accumulateAndGet(id + 1L, Math::max);
+    }
+
+    /**
+     * @return следующий свободный id ({@code Integer.MAX_VALUE + 1}, если id исчерпаны)
+     */
+    public long peek() {
+        return next.get();
+    }
+}
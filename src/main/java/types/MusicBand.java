@@ -2,21 +2,28 @@ package types;
 
 import io.CheckedReader;
 import io.LocalDateAdapter;
+import io.OutputSink;
 import io.UnmarshalCheckable;
 import exceptions.ValueException;
 
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.Objects;
 
 /**
- * Музыкальная группа
+ * Музыкальная группа.
+ * Поля группы задаются только при ее создании, поэтому группа, добавленная
+ * в коллекцию, не изменяется и может читаться из нескольких потоков без
+ * блокировки; обновление группы заменяет ее в коллекции новым объектом.
  */
 public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
-    static Integer next_id = 1;
+    /** Количество строк, читаемых {@link #fromReader(CheckedReader)} из неинтерактивного потока */
+    public static final int READER_LINES = 8;
+
     private Integer id;         // Поле не может быть null, Значение поля должно быть больше 0,
                                 // Значение этого поля должно быть уникальным,
                                 // Значение этого поля должно генерироваться автоматически
@@ -41,10 +48,65 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
         result.setCreationDate(LocalDate.now());
         reader.readString(result::setName, "  Название: ");
         result.setCoordinates(Coordinates.fromReader(reader));
-        reader.readValue(Long.class, result::setNumberOfParticipants, "  Количество участников: ");
-        reader.readValue(LocalDate.class, result::setEstablishmentDate, "  Дата основания: ");
+        reader.readLong(result::setNumberOfParticipants, "  Количество участников: ");
+        reader.readDate(result::setEstablishmentDate, "  Дата основания: ");
         result.setBestAlbum(Album.fromReader(reader));
-        reader.readValue(MusicGenre.class, result::setGenre, "Жанр " + MusicGenre.getValues() + ": ");
+        reader.readGenre(result::setGenre, "Жанр " + MusicGenre.getValues() + ": ");
+        return result;
+    }
+
+    /**
+     * Создание новой группы без id. Id устанавливается при добавлении
+     * группы в коллекцию.
+     * @param name название
+     * @param coordinates координаты
+     * @param creationDate дата создания записи
+     * @param numberOfParticipants количество участников
+     * @param establishmentDate дата основания
+     * @param genre жанр
+     * @param bestAlbum лучший альбом
+     * @return новая группа
+     * @throws IllegalArgumentException если значение одного из полей недопустимо
+     */
+    public static MusicBand create(String name, Coordinates coordinates, LocalDate creationDate,
+                                   long numberOfParticipants, LocalDate establishmentDate,
+                                   MusicGenre genre, Album bestAlbum) {
+        MusicBand result = new MusicBand();
+        result.setName(name);
+        result.setCoordinates(coordinates);
+        result.setCreationDate(creationDate);
+        result.setNumberOfParticipants(numberOfParticipants);
+        result.setEstablishmentDate(establishmentDate);
+        result.setGenre(genre);
+        result.setBestAlbum(bestAlbum);
+        return result;
+    }
+
+    /**
+     * Восстановление группы из сохраненных данных.
+     * @param id id группы
+     * @param name название
+     * @param coordinates координаты
+     * @param creationDate дата создания записи
+     * @param numberOfParticipants количество участников
+     * @param establishmentDate дата основания
+     * @param genre жанр
+     * @param bestAlbum лучший альбом
+     * @return восстановленная группа
+     * @throws IllegalArgumentException если значение одного из полей недопустимо
+     */
+    public static MusicBand restore(int id, String name, Coordinates coordinates, LocalDate creationDate,
+                                    long numberOfParticipants, LocalDate establishmentDate,
+                                    MusicGenre genre, Album bestAlbum) {
+        MusicBand result = new MusicBand();
+        result.setId(id);
+        result.setName(name);
+        result.setCoordinates(coordinates);
+        result.setCreationDate(creationDate);
+        result.setNumberOfParticipants(numberOfParticipants);
+        result.setEstablishmentDate(establishmentDate);
+        result.setGenre(genre);
+        result.setBestAlbum(bestAlbum);
         return result;
     }
 
@@ -59,6 +121,7 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
     /**
      * @return название группы
      */
+    @XmlElement
     public String getName() {
         return name;
     }
@@ -66,6 +129,7 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
     /**
      * @return {@link Coordinates координаты}
      */
+    @XmlElement
     public Coordinates getCoordinates() {
         return coordinates;
     }
@@ -82,6 +146,7 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
     /**
      * @return количество участников группы
      */
+    @XmlElement
     public long getNumberOfParticipants() {
         return numberOfParticipants;
     }
@@ -97,6 +162,7 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
     /**
      * @return музыкальный {@link MusicGenre жанр}
      */
+    @XmlElement
     public MusicGenre getGenre() {
         return genre;
     }
@@ -104,30 +170,26 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
     /**
      * @return лучший альбом
      */
+    @XmlElement
     public Album getBestAlbum() {
         return bestAlbum;
     }
 
-    void setId() {
-        setId(nextId());
-    }
-
-    // Устанавливает id
-    private void setId(Integer newId) {
+    // Устанавливает id, выданный коллекцией (см. IdAllocator)
+    void setId(Integer newId) {
         if (this.id != null)
             throw new IllegalStateException("id уже установлен");
 
         if (newId == null || newId < 1)
             throw new IllegalArgumentException("id должно быть больше нуля : " + newId);
         this.id = newId;
-        next_id = (newId >= next_id ? newId + 1 : next_id);
     }
 
     /**
      * Устанавливает название группы
      * @param name название
      */
-    public void setName(String name) {
+    void setName(String name) {
         if (name == null || name.isEmpty())
             throw new ValueException("Название группы не может быть пустым");
         this.name = name;
@@ -137,7 +199,7 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
      * Устанавливает координаты {@link Coordinates}.
      * @param coord координаты
      */
-    public void setCoordinates(Coordinates coord) {
+    void setCoordinates(Coordinates coord) {
         if (coord == null)
             throw new ValueException("Координаты не могут быть пустыми");
         this.coordinates = coord;
@@ -154,7 +216,7 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
      *  Устанавливает количество участников группы.
      * @param n количество участников
      */
-    public void setNumberOfParticipants(long n) {
+    void setNumberOfParticipants(long n) {
         if (n <= 0)
             throw new ValueException("Количество членов группы должно быть больше нуля");
         this.numberOfParticipants = n;
@@ -164,7 +226,7 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
      * Устанавливает дату основания группы.
      * @param date дата
      */
-    public void setEstablishmentDate(LocalDate date) {
+    void setEstablishmentDate(LocalDate date) {
         if (date == null)
             throw new ValueException("Дата основания группы не может быть пустой");
         this.establishmentDate = date;
@@ -174,7 +236,7 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
      * Устанавливает жанр: один из {@link MusicGenre}.
      * @param genre жанр
      */
-    public void setGenre(MusicGenre genre) {
+    void setGenre(MusicGenre genre) {
         if (genre == null)
             throw new ValueException("Жанр не может быть пустыми");
         this.genre = genre;
@@ -184,7 +246,7 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
      * Устанавливает лучший альбом.
      * @param album альбом
      */
-    public void setBestAlbum(Album album) {
+    void setBestAlbum(Album album) {
         if (album == null)
             throw new ValueException("Альбом не может быть пустыми");
         this.bestAlbum = album;
@@ -216,16 +278,53 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
      */
     @Override
     public String toString() {
-        return "MusicBand{" +
-                "id=" + id +
-                ", name='" + name + '\'' +
-                ", coordinates=" + coordinates +
-                ", creationDate=" + creationDate +
-                ", numberOfParticipants=" + numberOfParticipants +
-                ", establishmentDate=" + establishmentDate +
-                ", genre=" + genre +
-                ", bestAlbum=" + bestAlbum +
-                '}';
+        return describe(new StringBuilder()).toString();
+    }
+
+    /**
+     * Запись строкового представления группы в буфер.
+     * @param sb буфер, в который производится запись
+     * @return буфер {@code sb}
+     */
+    public StringBuilder describe(StringBuilder sb) {
+        return describe(sb, id, name, coordinates.getX(), coordinates.getY(),
+                creationDate, numberOfParticipants, establishmentDate, genre,
+                bestAlbum.getName(), bestAlbum.getTracks());
+    }
+
+    /**
+     * Запись строкового представления группы по значениям ее полей.
+     * Позволяет получить представление группы, не создавая ее объект.
+     * @param sb буфер, в который производится запись
+     * @param id id
+     * @param name название
+     * @param x координата x
+     * @param y координата y
+     * @param creationDate дата создания записи
+     * @param numberOfParticipants количество участников
+     * @param establishmentDate дата основания
+     * @param genre жанр
+     * @param albumName название лучшего альбома
+     * @param tracks количество треков лучшего альбома
+     * @return буфер {@code sb}
+     */
+    public static StringBuilder describe(StringBuilder sb, int id, String name, long x, double y,
+                                         LocalDate creationDate, long numberOfParticipants,
+                                         LocalDate establishmentDate, MusicGenre genre,
+                                         String albumName, long tracks) {
+        sb.append("MusicBand{id=").append(id)
+                .append(", name='").append(name).append('\'')
+                .append(", coordinates={").append(x).append(", ").append(y).append('}')
+                .append(", creationDate=");
+        OutputSink.appendDate(sb, creationDate)
+                .append(", numberOfParticipants=").append(numberOfParticipants)
+                .append(", establishmentDate=");
+        OutputSink.appendDate(sb, establishmentDate)
+                .append(", genre='").append(genre.value()).append('\'')
+                .append(", bestAlbum={name='").append(albumName).append('\'')
+                .append(", tracks=").append(tracks).append('}')
+                .append('}');
+        return sb;
     }
 
     /**
@@ -267,9 +366,4 @@ public class MusicBand implements Comparable<MusicBand>, UnmarshalCheckable {
         }
         return result;
     }
-
-    private static Integer nextId()
-    {
-        return next_id++;
-    }
 }
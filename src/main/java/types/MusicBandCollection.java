@@ -1,37 +1,428 @@
 package types;
 
+import io.BandSnapshot;
+import io.MappedSnapshot;
 import io.UnmarshalCheckable;
 import io.LocalDateAdapter;
+import io.XmlFile;
+import exceptions.DatabaseException;
 
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.UnmarshalException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * Класс адаптер коллекции музыкальных групп.
+ * <p>Класс адаптер коллекции музыкальных групп.</p>
+ * <p>Способ хранения групп задается {@link Storage}: объекты в {@link ArrayList}
+ * с индексом по id в {@link HashMap}, либо хранилище {@link BandStore}
+ * (столбцы в куче или записи вне кучи). Во втором случае объекты групп
+ * создаются при обращении к ним, а группа по id находится двоичным поиском
+ * по id групп хранилища.</p>
  */
 @XmlRootElement(name = "collection")
 public class MusicBandCollection implements UnmarshalCheckable {
     @XmlElement(name = "band")
-    private ArrayDeque<MusicBand> collection;
+    private List<MusicBand> collection;     // Группы, упорядоченные по id: ArrayList или BandStore
     @XmlAttribute
     @XmlJavaTypeAdapter(value = LocalDateAdapter.class)
     private final LocalDate init_date;
+    private final HashMap<Integer, MusicBand> index;    // Индекс групп по id, null при хранении в BandStore
+    private long participantsSum = 0;                   // Сумма участников всех групп
+    private final EstablishmentIndex byEstablishment = new EstablishmentIndex();  // Индекс по дате основания
+    private TreeSet<MusicBand> byOrder;     // Индекс в естественном порядке групп, строится при первом обращении
+    private final IdAllocator ids = new IdAllocator();  // Распределитель id новых групп
+
+    // Естественный порядок групп, при равенстве - порядок id.
+    // Группа без id (еще не добавленная) больше всех равных ей групп.
+    private static final Comparator<MusicBand> ORDER = (a, b) -> {
+        int result = a.compareTo(b);
+        if (result != 0)
+            return result;
+        return Integer.compare(a.getId() == null ? Integer.MAX_VALUE : a.getId(),
+                b.getId() == null ? Integer.MAX_VALUE : b.getId());
+    };
 
     /**
      * Создание новой коллекции музыкальных групп.
      */
     public MusicBandCollection() {
-        collection = new ArrayDeque<>();
-        init_date = LocalDate.now();
+        this(LocalDate.now(), Storage.OBJECTS);
+    }
+
+    /**
+     * Создание новой коллекции музыкальных групп.
+     * @param storage способ хранения групп
+     */
+    public MusicBandCollection(Storage storage) {
+        this(LocalDate.now(), storage);
+    }
+
+    // Создание пустой коллекции с заданной датой создания
+    private MusicBandCollection(LocalDate initDate, Storage storage) {
+        collection = storage.newList();
+        index = storage == Storage.OBJECTS ? new HashMap<>() : null;
+        init_date = initDate;
+    }
+
+    /**
+     * Потоковая загрузка коллекции из XML файла.
+     * Группы читаются по одной и сразу добавляются в коллекцию
+     * с проверкой уникальности id. Если группы в файле упорядочены по id,
+     * коллекция не пересортировывается.
+     * @param path путь к файлу
+     * @param storage способ хранения групп
+     * @return загруженная коллекция
+     * @throws UnmarshalException если файл поврежден или имеет неверный формат
+     * @throws JAXBException если классы данных с неверными JAXB аннотациями
+     *          или другие неожиданные ошибки при работе JAXB
+     */
+    public static MusicBandCollection load(Path path, Storage storage) throws JAXBException {
+        MusicBandCollection result = XmlFile.unmarshallEach(path, "band", MusicBand.class,
+                root -> {
+                    if (!"collection".equals(root.getLocalName()))
+                        throw new IllegalArgumentException("Неожиданный элемент: " + root.getLocalName());
+                    String date = root.getAttributeValue(null, "initDate");
+                    try {
+                        return new MusicBandCollection(date == null ? null : LocalDate.parse(date), storage);
+                    } catch (DateTimeException e) {
+                        throw new IllegalArgumentException("Неверная дата инициализации коллекции: " + date);
+                    }
+                },
+                MusicBandCollection::put);
+        if (!result.isEmpty() && result.init_date == null)
+            throw new UnmarshalException("Отсутствует дата инициализации коллекции");
+        result.loaded();
+        return result;
+    }
+
+    /**
+     * Потоковое сохранение групп в XML файл коллекции.
+     * Формат файла совпадает с формируемым JAXB для всей коллекции.
+     * @param path путь к файлу
+     * @param initDate дата создания коллекции
+     * @param bands сохраняемые группы
+     * @throws IOException при ошибках работы с файлом
+     * @throws JAXBException если классы данных с неверными JAXB аннотациями
+     *          или другие неожиданные ошибки при работе JAXB
+     */
+    public static void save(Path path, LocalDate initDate, Iterator<MusicBand> bands)
+            throws IOException, JAXBException {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        if (initDate != null)
+            attributes.put("initDate", initDate.toString());
+        XmlFile.marshallEach(path, "collection", attributes, "band", MusicBand.class, bands);
+    }
+
+    /**
+     * Создание коллекции из отображенного в память снимка.
+     * Создаются объекты всех групп снимка.
+     * @param snapshot снимок
+     * @param storage способ хранения групп
+     * @return коллекция
+     * @throws IllegalStateException если снимок поврежден или содержит повторяющиеся id
+     */
+    public static MusicBandCollection fromSnapshot(MappedSnapshot snapshot, Storage storage) {
+        MusicBandCollection result = new MusicBandCollection(snapshot.initDate(), storage);
+        snapshot.forEach(result::put);
+        result.loaded();
+        return result;
+    }
+
+    /**
+     * Загрузка коллекции из двоичного снимка.
+     * @param path путь к файлу
+     * @param storage способ хранения групп
+     * @return загруженная коллекция
+     * @throws DatabaseException если файл поврежден или имеет неверный формат
+     * @throws IOException при ошибках работы с файлом
+     * @see BandSnapshot
+     */
+    public static MusicBandCollection loadBinary(Path path, Storage storage) throws IOException {
+        MusicBandCollection result = BandSnapshot.read(path, initDate -> new MusicBandCollection(initDate, storage),
+                MusicBandCollection::put);
+        result.loaded();
+        return result;
+    }
+
+    // Завершение загрузки: упорядочение по id и освобождение лишнего места
+    private void loaded() {
+        if (!isSorted())
+            sort();
+        if (collection instanceof BandStore)
+            ((BandStore) collection).trimToSize();
+    }
+
+    // Добавление загруженной группы с уже установленным id.
+    // При хранении в BandStore группа сразу вставляется в порядке id.
+    private void put(MusicBand band) {
+        if (index != null) {
+            if (index.putIfAbsent(band.getId(), band) != null)
+                throw new IllegalStateException("Повторяющийся id: " + band.getId());
+            collection.add(band);
+        } else {
+            int i = position(band.getId());
+            if (i >= 0)
+                throw new IllegalStateException("Повторяющийся id: " + band.getId());
+            collection.add(-i - 1, band);
+        }
+        ids.observe(band.getId());
+        participantsSum += band.getNumberOfParticipants();
+        byEstablishment.append(band);
+        if (byOrder != null)
+            byOrder.add(band);
+    }
+
+    /**
+     * Добавление группы с уже установленным id (например, восстановленной
+     * из журнала изменений) с сохранением упорядоченности коллекции.
+     * @param band добавляемая группа
+     * @return {@code true}, если добавлена; {@code false}, если группа
+     *          с таким id уже есть в коллекции
+     */
+    public boolean insert(MusicBand band) {
+        if (index == null) {
+            int i = position(band.getId());
+            if (i >= 0)
+                return false;
+            collection.add(-i - 1, band);
+            ids.observe(band.getId());
+            added(band);
+            return true;
+        }
+        if (index.putIfAbsent(band.getId(), band) != null)
+            return false;
+        ids.observe(band.getId());
+        MusicBand last = last();
+        collection.add(band);
+        added(band);
+        if (last != null && last.getId() > band.getId())
+            sort();
+        return true;
+    }
+
+    /**
+     * Замена группы группой с тем же id без изменения порядка коллекции.
+     * @param band новая группа
+     * @return {@code true}, если замена произведена; {@code false}, если группы
+     *          с таким id нет в коллекции
+     */
+    public boolean replace(MusicBand band) {
+        int i = position(band.getId());
+        if (i < 0)
+            return false;
+        MusicBand old = collection.set(i, band);
+        if (index != null)
+            index.put(band.getId(), band);
+        removed(old);
+        added(band);
+        return true;
+    }
+
+    /**
+     * Копия списка групп коллекции.
+     * Группы не изменяются после добавления в коллекцию (обновление заменяет
+     * объект группы), поэтому копия ссылок является согласованным снимком
+     * коллекции, который можно сохранять в другом потоке. При хранении
+     * в {@link BandStore} копируется хранилище, а объекты групп создаются
+     * при обходе копии.
+     * @return список групп в порядке возрастания id
+     */
+    public List<MusicBand> copyOf() {
+        if (collection instanceof BandStore)
+            return ((BandStore) collection).copy();
+        return new ArrayList<>(collection);
+    }
+
+    /**
+     * Сумма участников всех групп.
+     * Поддерживается при изменениях коллекции, поэтому вычисляется за O(1).
+     * @return сумма участников
+     */
+    public long participantsSum() {
+        return participantsSum;
+    }
+
+    /**
+     * Даты основания всех групп в порядке убывания.
+     * Даты берутся из индекса по дате основания без сортировки
+     * и копируются в массив, который можно обходить без блокировки коллекции.
+     * @return даты основания в днях от эпохи
+     */
+    public long[] establishmentDaysDescending() {
+        long[] days = new long[collection.size()];
+        int[] n = {0};
+        byEstablishment.forEachDescending((day, id) -> days[n[0]++] = EstablishmentIndex.isClamped(day)
+                ? find(id).getEstablishmentDate().toEpochDay()
+                : day);
+        return days;
+    }
+
+    /**
+     * Обход групп, основанных в заданный период, в порядке возрастания
+     * даты основания (при равных датах - id).
+     * @param from начало периода (включительно)
+     * @param to конец периода (включительно)
+     * @param action действие над группой
+     */
+    public void forEachEstablishedBetween(LocalDate from, LocalDate to, Consumer<? super MusicBand> action) {
+        byEstablishment.forEachBetween(from, to, (day, id) -> {
+            MusicBand band = find(id);
+            if (!EstablishmentIndex.isClamped(day)
+                    || !band.getEstablishmentDate().isBefore(from) && !band.getEstablishmentDate().isAfter(to))
+                action.accept(band);
+        });
+    }
+
+    /**
+     * Наибольшая в естественном порядке группа коллекции.
+     * При первом обращении строится индекс групп в естественном порядке,
+     * далее он поддерживается при изменениях коллекции.
+     * @return наибольшая группа, либо {@code null}, если коллекция пуста
+     */
+    public MusicBand max() {
+        TreeSet<MusicBand> order = byOrder();
+        return order.isEmpty() ? null : order.last();
+    }
+
+    /**
+     * Удаление всех групп, превышающих заданную в естественном порядке.
+     * Удаляемые группы находятся по индексу в естественном порядке
+     * без сравнения с остальными группами, а их номера в коллекции -
+     * двоичным поиском по id. Оставшиеся группы сдвигаются одним проходом,
+     * начиная с первой удаляемой. Время - O(k log n + (n - p)), где k -
+     * количество удаляемых групп, а p - номер первой из них: хвост списка
+     * за первой удаляемой группой сдвигается, но не сравнивается.
+     * @param band заданная группа
+     * @return удаленные группы
+     */
+    public List<MusicBand> removeGreater(MusicBand band) {
+        NavigableSet<MusicBand> tail = byOrder().tailSet(probe(band), false);
+        if (tail.isEmpty())
+            return Collections.emptyList();
+        List<MusicBand> removed = new ArrayList<>(tail);
+        tail.clear();
+        int[] positions = new int[removed.size()];
+        for (int i = 0; i < positions.length; i++) {
+            MusicBand x = removed.get(i);
+            positions[i] = position(x.getId());
+            participantsSum -= x.getNumberOfParticipants();
+        }
+        Parallel.sort(positions);
+        if (collection instanceof BandStore) {
+            ((BandStore) collection).removePositions(positions);
+        }
+        else {
+            for (MusicBand x : removed)
+                index.remove(x.getId());
+            removePositions(positions);
+        }
+        byEstablishment.removeAll(removed);
+        return removed;
+    }
+
+    // Удаление групп с заданными номерами (в порядке возрастания) из ArrayList:
+    // оставшиеся группы, начиная с первой удаляемой, сдвигаются одним проходом
+    private void removePositions(int[] positions) {
+        int size = collection.size();
+        int kept = positions[0];
+        for (int k = 0; k < positions.length; k++) {
+            int next = k + 1 < positions.length ? positions[k + 1] : size;
+            for (int i = positions[k] + 1; i < next; i++)
+                collection.set(kept++, collection.get(i));
+        }
+        collection.subList(kept, size).clear();
+    }
+
+    // Индекс групп в естественном порядке, при необходимости строится
+    private TreeSet<MusicBand> byOrder() {
+        if (byOrder == null) {
+            byOrder = new TreeSet<>(ORDER);
+            byOrder.addAll(collection);
+        }
+        return byOrder;
+    }
+
+    // Группа для поиска в индексе: больше всех групп, равных заданной
+    private static MusicBand probe(MusicBand band) {
+        if (band.getId() == null)
+            return band;
+        MusicBand probe = new MusicBand();
+        probe.setName(band.getName());
+        probe.setNumberOfParticipants(band.getNumberOfParticipants());
+        probe.setEstablishmentDate(band.getEstablishmentDate());
+        return probe;
+    }
+
+    // Учет добавленной группы в агрегатах и индексах коллекции
+    private void added(MusicBand band) {
+        participantsSum += band.getNumberOfParticipants();
+        byEstablishment.add(band);
+        if (byOrder != null)
+            byOrder.add(band);
+    }
+
+    // Учет удаленной группы в агрегатах и индексах коллекции
+    private void removed(MusicBand band) {
+        participantsSum -= band.getNumberOfParticipants();
+        byEstablishment.remove(band);
+        if (byOrder != null)
+            byOrder.remove(band);
+    }
+
+    // Последняя группа коллекции, либо null
+    private MusicBand last() {
+        return collection.isEmpty() ? null : collection.get(collection.size() - 1);
+    }
+
+    // Двоичный поиск позиции группы с заданным id,
+    // либо (-(точка вставки) - 1), если группы нет
+    private int position(int id) {
+        int low = 0;
+        int high = collection.size() - 1;
+        if (high >= 0 && idAt(high) < id)
+            return -(high + 2);
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = idAt(mid);
+            if (midId < id)
+                low = mid + 1;
+            else if (midId > id)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    // id группы по порядковому номеру без создания объекта группы при хранении в BandStore
+    private int idAt(int i) {
+        if (collection instanceof BandStore)
+            return ((BandStore) collection).id(i);
+        return collection.get(i).getId();
+    }
+
+    // Проверка упорядоченности коллекции по id
+    private boolean isSorted() {
+        int prev = 0;
+        for (int i = 0; i < collection.size(); i++) {
+            int id = idAt(i);
+            if (id < prev)
+                return false;
+            prev = id;
+        }
+        return true;
     }
 
     /**
@@ -43,12 +434,15 @@ public class MusicBandCollection implements UnmarshalCheckable {
 
     /**
      * Сортировка коллекции.
+     * Большие коллекции сортируются параллельно (см. {@link Parallel}).
      * @param cmp объект компаратор
      */
     public void sort(Comparator<? super MusicBand> cmp) {
-        collection = stream()
-                .sorted(cmp)
-                .collect(Collectors.toCollection(ArrayDeque::new));
+        MusicBand[] sorted = collection.toArray(new MusicBand[0]);
+        Parallel.sort(sorted, cmp);
+        collection = collection instanceof BandStore
+                ? ((BandStore) collection).create(Arrays.asList(sorted))
+                : new ArrayList<>(Arrays.asList(sorted));
     }
 
     /**
@@ -65,25 +459,133 @@ public class MusicBandCollection implements UnmarshalCheckable {
      * @return {@code true}, если удаление произведено; иначе {@code false}
      */
     public boolean removeIf(Predicate<? super MusicBand> filter) {
-        return collection.removeIf(filter);
+        List<MusicBand> removed = new ArrayList<>();
+        collection.removeIf(x -> {
+            if (!filter.test(x))
+                return false;
+            if (index != null)
+                index.remove(x.getId());
+            participantsSum -= x.getNumberOfParticipants();
+            removed.add(x);
+            return true;
+        });
+        byEstablishment.removeAll(removed);
+        if (byOrder != null)
+            removed.forEach(byOrder::remove);
+        return !removed.isEmpty();
+    }
+
+    /**
+     * Удаление группы по id.
+     * @param id id удаляемой группы
+     * @return {@code true}, если удаление произведено; иначе {@code false}
+     */
+    public boolean remove(int id) {
+        int i = position(id);
+        if (i < 0)
+            return false;
+        MusicBand band = collection.remove(i);
+        if (index != null)
+            index.remove(id);
+        removed(band);
+        return true;
+    }
+
+    /**
+     * Поиск группы по id.
+     * @param id искомый id
+     * @return найденная группа, либо {@code null}
+     */
+    public MusicBand find(int id) {
+        if (index != null)
+            return index.get(id);
+        int i = position(id);
+        return i >= 0 ? collection.get(i) : null;
+    }
+
+    /**
+     * Группа по порядковому номеру в коллекции (в порядке возрастания id).
+     * @param i порядковый номер
+     * @return группа
+     * @throws IndexOutOfBoundsException если номер вне диапазона
+     */
+    public MusicBand get(int i) {
+        return collection.get(i);
     }
 
+    /**
+     * Удаление всех элементов коллекции.
+     */
     public void clear() {
         collection.clear();
+        if (index != null)
+            index.clear();
+        participantsSum = 0;
+        byEstablishment.clear();
+        byOrder = null;
     }
 
     /**
      * Добавление группы в коллекцию.
+     * Новый id всегда больше id всех имеющихся групп, поэтому группа
+     * добавляется в конец без пересортировки коллекции.
      * @param band добавляемая группа
      * @return {@code true}
      */
     public boolean add(MusicBand band) {
-        band.setId();
+        band.setId(ids.next());
+        MusicBand last = last();
         boolean result = collection.add(band);
-        sort();
+        if (index != null)
+            index.put(band.getId(), band);
+        added(band);
+        if (last != null && last.getId() > band.getId())
+            sort();
         return result;
     }
 
+    /**
+     * Добавление нескольких групп за одну операцию.
+     * Группам в порядке списка назначаются id из диапазона, выделенного
+     * одним вызовом {@link IdAllocator#reserve(int)}, после чего они
+     * дописываются в конец коллекции. Индекс по дате основания
+     * упорядочивается один раз при следующем обращении к нему.
+     * @param bands добавляемые группы без id
+     */
+    public void addAll(List<MusicBand> bands) {
+        if (bands.isEmpty())
+            return;
+        MusicBand last = last();
+        if (collection instanceof BandStore)
+            ((BandStore) collection).ensureCapacity(collection.size() + bands.size());
+        else
+            ((ArrayList<MusicBand>) collection).ensureCapacity(collection.size() + bands.size());
+        int id = ids.reserve(bands.size());
+        for (MusicBand band : bands) {
+            band.setId(id++);
+            collection.add(band);
+            if (index != null)
+                index.put(band.getId(), band);
+            participantsSum += band.getNumberOfParticipants();
+            byEstablishment.append(band);
+        }
+        if (byOrder != null)
+            byOrder.addAll(bands);
+        if (last != null && last.getId() > bands.get(0).getId())
+            sort();
+    }
+
+    /**
+     * Распределитель id коллекции. Позволяет заранее выделить диапазон id
+     * ({@link IdAllocator#reserve(int)}) группам, создаваемым в других потоках
+     * методом {@link MusicBand#restore}, и затем добавить их методом
+     * {@link #insert(MusicBand)}.
+     * @return распределитель id
+     */
+    public IdAllocator ids() {
+        return ids;
+    }
+
     /**
      * @return дата создания коллекции.
      */
@@ -118,8 +620,17 @@ public class MusicBandCollection implements UnmarshalCheckable {
 
     @Override
     public void afterUnmarshal(Unmarshaller u, Object parent) {
-        if (stream().map(MusicBand::getId).distinct().count() != size() ||
-                !collection.isEmpty() && init_date == null)
+        index.clear();
+        participantsSum = 0;
+        byEstablishment.clear();
+        byOrder = null;
+        forEach(x -> {
+            index.put(x.getId(), x);
+            ids.observe(x.getId());
+            participantsSum += x.getNumberOfParticipants();
+            byEstablishment.append(x);
+        });
+        if (index.size() != size() || !collection.isEmpty() && init_date == null)
             throw new IllegalStateException();
         sort();
     }
@@ -128,7 +639,7 @@ public class MusicBandCollection implements UnmarshalCheckable {
      * Возвращает объект класса коллекции - внутреннего представления.
      * @return объект класса коллекции
      */
-    public static Class<?> getUnderlyingType() {
-        return ArrayDeque.class;
+    public Class<?> getUnderlyingType() {
+        return collection.getClass();
     }
 }
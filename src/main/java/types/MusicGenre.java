@@ -4,6 +4,7 @@ import javax.xml.bind.annotation.XmlEnum;
 import javax.xml.bind.annotation.XmlEnumValue;
 import javax.xml.bind.annotation.XmlType;
 import java.util.Arrays;
+import java.util.HashMap;
 
 /**
  * Перечисление жанра музыки
@@ -29,6 +30,16 @@ public enum MusicGenre {
 
     private final String value;
 
+    // Жанры по строковому значению и по имени константы
+    private static final HashMap<String, MusicGenre> byValue = new HashMap<>();
+    private static final HashMap<String, MusicGenre> byName = new HashMap<>();
+    static {
+        for (MusicGenre genre : values()) {
+            byValue.put(genre.value, genre);
+            byName.put(genre.name(), genre);
+        }
+    }
+
     MusicGenre(String str) {
         value = str;
     }
@@ -41,6 +52,11 @@ public enum MusicGenre {
         return Arrays.toString(values());
     }
 
+    // Строковое значение без кавычек
+    String value() {
+        return value;
+    }
+
     /**
      * Строковое представление перечисления.
      * Строковое значения в одинарных кавычках.
@@ -55,11 +71,23 @@ public enum MusicGenre {
      * Преобразует строку к типу {@code MusicGenre}.
      * @param str строка
      * @return объект {@code MusicGenre}
+     * @throws IllegalArgumentException если строка не является жанром
      */
     public static MusicGenre parse(String str) {
-        return Arrays.stream(MusicGenre.values())
-                .filter(c -> str.equals(c.toString().substring(1, c.toString().length() - 1)))
-                .findAny()
-                .orElseGet(() -> MusicGenre.valueOf(str.toUpperCase()));
+        MusicGenre result = find(str);
+        if (result == null)
+            throw new IllegalArgumentException("Нет жанра " + str);
+        return result;
+    }
+
+    /**
+     * Поиск жанра по строковому значению (без кавычек) или по имени константы
+     * в любом регистре.
+     * @param str строка
+     * @return объект {@code MusicGenre} или {@code null}, если жанр не найден
+     */
+    public static MusicGenre find(String str) {
+        MusicGenre result = byValue.get(str);
+        return result != null ? result : byName.get(str.toUpperCase());
     }
 }
@@ -0,0 +1,420 @@
+package types;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+/**
+ * <p>Хранилище групп вне кучи.</p>
+ * <p>Каждая группа хранится записью фиксированной длины в прямых
+ * ({@link ByteBuffer#allocateDirect direct}) буферах по 16 МиБ: id, даты
+ * в днях от эпохи, номер жанра, координаты, количество участников и треков
+ * и смещения названий группы и альбома. Названия хранятся в отдельной
+ * области строк из прямых буферов по 16 МиБ (длина и байты строки в UTF-8);
+ * строка не пересекает границу буфера. Сборщик мусора не обходит содержимое
+ * прямых буферов, поэтому размер коллекции почти не влияет на паузы сборки.
+ * Объем хранилища ограничен параметром JVM {@code -XX:MaxDirectMemorySize}.</p>
+ * <p>Группы с датами вне диапазона {@code int} дней от эпохи или с названиями
+ * длиннее четверти буфера строк хранятся объектами в куче.</p>
+ * <p>Как и в {@link BandColumns}, строки удаленных групп уплотняются, когда
+ * занимают больше половины области строк, а копия хранилища ({@link #copy()})
+ * разделяет с ним область строк, в которую строки только дописываются.</p>
+ */
+final class OffHeapBands extends BandStore {
+    private static final int RECORD_SIZE = 64;
+    private static final int R_ID = 0;
+    private static final int R_CREATION_DATE = 4;
+    private static final int R_ESTABLISHMENT_DATE = 8;
+    private static final int R_GENRE = 12;
+    private static final int R_X = 16;
+    private static final int R_Y = 24;
+    private static final int R_PARTICIPANTS = 32;
+    private static final int R_TRACKS = 40;
+    private static final int R_NAME = 48;
+    private static final int R_ALBUM = 56;
+
+    private static final int RECORD_SHIFT = 18;                 // записей в буфере: 2^18 (16 МиБ)
+    private static final int RECORD_MASK = (1 << RECORD_SHIFT) - 1;
+    private static final int STRING_SHIFT = 24;                 // размер буфера строк: 16 МиБ
+    private static final int STRING_SEGMENT = 1 << STRING_SHIFT;
+    private static final int STRING_MASK = STRING_SEGMENT - 1;
+    private static final int MAX_STRING = STRING_SEGMENT / 4;
+    private static final int MOVE_CHUNK = 1024;                 // записей за одно копирование
+    private static final long MIN_COMPACTED_POOL = 1 << 20;
+
+    private static final MusicGenre[] genres = MusicGenre.values();
+    private static final byte WIDE = -1;                        // номер жанра группы, хранящейся объектом
+
+    private int size = 0;
+    private ByteBuffer[] records = new ByteBuffer[0];
+    private ByteBuffer[] pool = new ByteBuffer[0];
+    private long poolUsed = 0;
+    private long poolDead = 0;                                  // байты строк удаленных групп
+    private HashMap<Integer, MusicBand> wide = new HashMap<>();
+    private final byte[] chunk = new byte[MOVE_CHUNK * RECORD_SIZE];
+
+    /**
+     * Создание пустого хранилища.
+     */
+    OffHeapBands() {
+    }
+
+    /**
+     * Создание хранилища с заданными группами.
+     * @param bands группы с установленными id
+     */
+    OffHeapBands(Collection<? extends MusicBand> bands) {
+        ensureCapacity(bands.size());
+        for (MusicBand band : bands)
+            add(band);
+    }
+
+    /**
+     * Копия хранилища. Записи копируются в новые буферы, область строк
+     * разделяется: строки только дописываются в ее конец, а уплотнение
+     * создает новые буферы.
+     * @return копия
+     */
+    @Override
+    OffHeapBands copy() {
+        OffHeapBands result = new OffHeapBands();
+        result.ensureCapacity(size);
+        for (int s = 0; s < result.records.length; s++) {
+            int used = Math.min(size - (s << RECORD_SHIFT), 1 << RECORD_SHIFT) * RECORD_SIZE;
+            ByteBuffer source = records[s].duplicate();
+            source.limit(used).position(0);
+            ByteBuffer target = result.records[s].duplicate();
+            target.position(0);
+            target.put(source);
+        }
+        result.size = size;
+        result.pool = Arrays.copyOf(pool, pool.length);
+        result.poolUsed = poolUsed;
+        result.poolDead = poolDead;
+        result.wide = new HashMap<>(wide);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    OffHeapBands create(Collection<? extends MusicBand> bands) {
+        return new OffHeapBands(bands);
+    }
+
+    /**
+     * @return количество групп
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Создание объекта группы по записи.
+     * @param i номер группы
+     * @return группа
+     */
+    @Override
+    public MusicBand get(int i) {
+        check(i, size);
+        ByteBuffer r = records[i >>> RECORD_SHIFT];
+        int base = (i & RECORD_MASK) * RECORD_SIZE;
+        byte genre = r.get(base + R_GENRE);
+        if (genre == WIDE)
+            return wide.get(r.getInt(base + R_ID));
+        return MusicBand.restore(r.getInt(base + R_ID), string(r.getLong(base + R_NAME)),
+                new Coordinates(r.getLong(base + R_X), r.getDouble(base + R_Y)),
+                LocalDate.ofEpochDay(r.getInt(base + R_CREATION_DATE)), r.getLong(base + R_PARTICIPANTS),
+                LocalDate.ofEpochDay(r.getInt(base + R_ESTABLISHMENT_DATE)), genres[genre],
+                new Album(string(r.getLong(base + R_ALBUM)), r.getLong(base + R_TRACKS)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int id(int i) {
+        check(i, size);
+        return records[i >>> RECORD_SHIFT].getInt((i & RECORD_MASK) * RECORD_SIZE + R_ID);
+    }
+
+    /**
+     * Замена группы.
+     * @param i номер группы
+     * @param band новая группа
+     * @return прежняя группа
+     */
+    @Override
+    public MusicBand set(int i, MusicBand band) {
+        MusicBand old = get(i);
+        release(i);
+        write(i, band);
+        compactIfNeeded();
+        return old;
+    }
+
+    /**
+     * Вставка группы.
+     * @param i номер, который получит группа
+     * @param band группа с установленным id
+     */
+    @Override
+    public void add(int i, MusicBand band) {
+        check(i, size + 1);
+        ensureCapacity(size + 1);
+        move(i, i + 1, size - i);
+        size++;
+        write(i, band);
+        modCount++;
+    }
+
+    /**
+     * Удаление группы.
+     * @param i номер группы
+     * @return удаленная группа
+     */
+    @Override
+    public MusicBand remove(int i) {
+        MusicBand old = get(i);
+        release(i);
+        move(i + 1, i, size - i - 1);
+        size--;
+        modCount++;
+        compactIfNeeded();
+        return old;
+    }
+
+    /**
+     * Удаление групп, удовлетворяющих предикату, за один проход.
+     * @param filter предикат
+     * @return {@code true}, если удаление произведено
+     */
+    @Override
+    public boolean removeIf(Predicate<? super MusicBand> filter) {
+        boolean[] removed = new boolean[size];
+        for (int i = 0; i < size; i++)
+            removed[i] = filter.test(get(i));
+        return removeMarked(removed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean removePositions(int[] positions) {
+        if (positions.length == 0)
+            return false;
+        int kept = positions[0];
+        for (int k = 0; k < positions.length; k++) {
+            int p = positions[k];
+            int next = k + 1 < positions.length ? positions[k + 1] : size;
+            release(p);
+            move(p + 1, kept, next - p - 1);
+            kept += next - p - 1;
+        }
+        size = kept;
+        modCount++;
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Удаление всех групп. Буферы освобождаются сборщиком мусора.
+     */
+    @Override
+    public void clear() {
+        records = new ByteBuffer[0];
+        pool = new ByteBuffer[0];
+        poolUsed = 0;
+        poolDead = 0;
+        wide = new HashMap<>();
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void ensureCapacity(int capacity) {
+        int segments = (int) (((long) capacity + RECORD_MASK) >>> RECORD_SHIFT);
+        if (segments <= records.length)
+            return;
+        int old = records.length;
+        records = Arrays.copyOf(records, segments);
+        for (int s = old; s < segments; s++)
+            records[s] = allocate((1 << RECORD_SHIFT) * RECORD_SIZE);
+    }
+
+    /**
+     * Освобождение буферов записей, не занятых группами.
+     */
+    @Override
+    void trimToSize() {
+        int segments = (int) (((long) size + RECORD_MASK) >>> RECORD_SHIFT);
+        if (segments < records.length)
+            records = Arrays.copyOf(records, segments);
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    // Запись группы
+    private void write(int i, MusicBand band) {
+        ByteBuffer r = records[i >>> RECORD_SHIFT];
+        int base = (i & RECORD_MASK) * RECORD_SIZE;
+        long creationDay = band.getCreationDate().toEpochDay();
+        long establishmentDay = band.getEstablishmentDate().toEpochDay();
+        r.putInt(base + R_ID, band.getId());
+        r.putInt(base + R_CREATION_DATE, EstablishmentIndex.day(band.getCreationDate()));
+        r.putInt(base + R_ESTABLISHMENT_DATE, EstablishmentIndex.day(band.getEstablishmentDate()));
+        r.putLong(base + R_X, band.getCoordinates().getX());
+        r.putDouble(base + R_Y, band.getCoordinates().getY());
+        r.putLong(base + R_PARTICIPANTS, band.getNumberOfParticipants());
+        r.putLong(base + R_TRACKS, band.getBestAlbum().getTracks());
+        byte[] name = band.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] album = band.getBestAlbum().getName().getBytes(StandardCharsets.UTF_8);
+        if (creationDay != (int) creationDay || establishmentDay != (int) establishmentDay
+                || name.length > MAX_STRING || album.length > MAX_STRING) {
+            r.put(base + R_GENRE, WIDE);
+            wide.put(band.getId(), band);
+            return;
+        }
+        r.put(base + R_GENRE, (byte) band.getGenre().ordinal());
+        r.putLong(base + R_NAME, intern(name));
+        r.putLong(base + R_ALBUM, intern(album));
+    }
+
+    // Учет строк удаляемой группы
+    private void release(int i) {
+        ByteBuffer r = records[i >>> RECORD_SHIFT];
+        int base = (i & RECORD_MASK) * RECORD_SIZE;
+        if (r.get(base + R_GENRE) == WIDE) {
+            wide.remove(r.getInt(base + R_ID));
+            return;
+        }
+        poolDead += stringSize(pool, r.getLong(base + R_NAME)) + stringSize(pool, r.getLong(base + R_ALBUM));
+    }
+
+    // Удаление отмеченных групп: непрерывные участки оставшихся групп переносятся целиком
+    private boolean removeMarked(boolean[] removed) {
+        int kept = 0;
+        int run = 0;    // начало текущего участка оставшихся групп
+        for (int i = 0; i <= size; i++) {
+            if (i < size && !removed[i])
+                continue;
+            move(run, kept, i - run);
+            kept += i - run;
+            if (i < size)
+                release(i);
+            run = i + 1;
+        }
+        if (kept == size)
+            return false;
+        size = kept;
+        modCount++;
+        compactIfNeeded();
+        return true;
+    }
+
+    // Перенос count записей с позиции from на позицию to блоками через буфер в куче
+    private void move(int from, int to, int count) {
+        if (count <= 0 || from == to)
+            return;
+        if (to < from) {
+            for (int done = 0; done < count; ) {
+                int n = chunk(from + done, to + done, count - done);
+                copy(from + done, to + done, n);
+                done += n;
+            }
+        } else {
+            for (int left = count; left > 0; ) {
+                int n = Math.min(Math.min(left, MOVE_CHUNK),
+                        Math.min(((from + left - 1) & RECORD_MASK) + 1, ((to + left - 1) & RECORD_MASK) + 1));
+                copy(from + left - n, to + left - n, n);
+                left -= n;
+            }
+        }
+    }
+
+    // Размер блока, не пересекающего границы буферов записей
+    private static int chunk(int from, int to, int count) {
+        return Math.min(Math.min(count, MOVE_CHUNK),
+                Math.min((1 << RECORD_SHIFT) - (from & RECORD_MASK), (1 << RECORD_SHIFT) - (to & RECORD_MASK)));
+    }
+
+    private void copy(int from, int to, int n) {
+        ByteBuffer source = records[from >>> RECORD_SHIFT].duplicate();
+        source.position((from & RECORD_MASK) * RECORD_SIZE);
+        source.get(chunk, 0, n * RECORD_SIZE);
+        ByteBuffer target = records[to >>> RECORD_SHIFT].duplicate();
+        target.position((to & RECORD_MASK) * RECORD_SIZE);
+        target.put(chunk, 0, n * RECORD_SIZE);
+    }
+
+    // Запись строки в конец области строк
+    private long intern(byte[] bytes) {
+        int needed = Integer.BYTES + bytes.length;
+        if ((poolUsed & STRING_MASK) + needed > STRING_SEGMENT)
+            poolUsed = (poolUsed | STRING_MASK) + 1;    // строка не пересекает границу буфера
+        int segment = (int) (poolUsed >>> STRING_SHIFT);
+        if (segment == pool.length) {
+            pool = Arrays.copyOf(pool, segment + 1);
+            pool[segment] = allocate(STRING_SEGMENT);
+        }
+        ByteBuffer target = pool[segment].duplicate();
+        target.position((int) (poolUsed & STRING_MASK));
+        target.putInt(bytes.length).put(bytes);
+        long offset = poolUsed;
+        poolUsed += needed;
+        return offset;
+    }
+
+    private String string(long offset) {
+        return new String(bytes(pool, offset), StandardCharsets.UTF_8);
+    }
+
+    // Размер строки в области строк вместе с длиной
+    private static int stringSize(ByteBuffer[] pool, long offset) {
+        return Integer.BYTES + pool[(int) (offset >>> STRING_SHIFT)].getInt((int) (offset & STRING_MASK));
+    }
+
+    // Уплотнение области строк, если больше половины ее занято удаленными строками
+    private void compactIfNeeded() {
+        if (poolUsed < MIN_COMPACTED_POOL || poolDead <= poolUsed / 2)
+            return;
+        ByteBuffer[] old = pool;
+        pool = new ByteBuffer[0];
+        poolUsed = 0;
+        poolDead = 0;
+        for (int i = 0; i < size; i++) {
+            ByteBuffer r = records[i >>> RECORD_SHIFT];
+            int base = (i & RECORD_MASK) * RECORD_SIZE;
+            if (r.get(base + R_GENRE) == WIDE)
+                continue;
+            r.putLong(base + R_NAME, intern(bytes(old, r.getLong(base + R_NAME))));
+            r.putLong(base + R_ALBUM, intern(bytes(old, r.getLong(base + R_ALBUM))));
+        }
+    }
+
+    // Байты строки из заданной области строк
+    private static byte[] bytes(ByteBuffer[] pool, long offset) {
+        ByteBuffer source = pool[(int) (offset >>> STRING_SHIFT)].duplicate();
+        source.position((int) (offset & STRING_MASK));
+        byte[] bytes = new byte[source.getInt()];
+        source.get(bytes);
+        return bytes;
+    }
+
+    private static void check(int i, int bound) {
+        if (i < 0 || i >= bound)
+            throw new IndexOutOfBoundsException("Номер группы: " + i);
+    }
+}
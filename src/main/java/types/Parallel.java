@@ -0,0 +1,106 @@
+package types;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Выбор между последовательным и параллельным выполнением операций
+ * над всеми группами коллекции.</p>
+ * <p>Сортировки и обходы, число элементов которых не меньше порога,
+ * выполняются параллельно в общем пуле {@link ForkJoinPool}, а остальные -
+ * последовательно, так как на небольших объемах накладные расходы
+ * на разбиение и объединение превышают выигрыш. Порог задается
+ * при запуске программы.</p>
+ */
+public final class Parallel {
+    /** Порог по умолчанию */
+    public static final int DEFAULT_THRESHOLD = 1 << 17;
+
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+
+    private Parallel() {}
+
+    /**
+     * @return порог параллельного выполнения
+     */
+    public static int threshold() {
+        return threshold;
+    }
+
+    /**
+     * Установка порога параллельного выполнения.
+     * @param value наименьшее число элементов, обрабатываемых параллельно
+     * @throws IllegalArgumentException если порог меньше единицы
+     */
+    public static void setThreshold(int value) {
+        if (value < 1)
+            throw new IllegalArgumentException("Порог параллельного выполнения должен быть больше нуля: " + value);
+        threshold = value;
+    }
+
+    /**
+     * @param size число обрабатываемых элементов
+     * @return {@code true}, если операцию над ними следует выполнять параллельно
+     */
+    public static boolean isParallel(int size) {
+        return size >= threshold;
+    }
+
+    /**
+     * Поток номеров, параллельный, если их число не меньше порога.
+     * @param from первый номер (включительно)
+     * @param to последний номер (не включительно)
+     * @return поток номеров
+     */
+    public static IntStream range(int from, int to) {
+        IntStream result = IntStream.range(from, to);
+        return isParallel(to - from) ? result.parallel() : result;
+    }
+
+    /**
+     * Сортировка части массива.
+     * @param a массив
+     * @param from начало сортируемой части (включительно)
+     * @param to конец сортируемой части (не включительно)
+     */
+    public static void sort(long[] a, int from, int to) {
+        if (isParallel(to - from))
+            Arrays.parallelSort(a, from, to);
+        else
+            Arrays.sort(a, from, to);
+    }
+
+    /**
+     * Сортировка массива.
+     * @param a массив
+     */
+    public static void sort(int[] a) {
+        if (isParallel(a.length))
+            Arrays.parallelSort(a);
+        else
+            Arrays.sort(a);
+    }
+
+    /**
+     * Устойчивая сортировка массива.
+     * @param <T> тип элементов
+     * @param a массив
+     * @param cmp объект компаратор
+     */
+    public static <T> void sort(T[] a, Comparator<? super T> cmp) {
+        if (isParallel(a.length))
+            Arrays.parallelSort(a, cmp);
+        else
+            Arrays.sort(a, cmp);
+    }
+
+    /**
+     * Строковое представление в виде порога и числа потоков общего пула.
+     * @return строковое представление
+     */
+    public static String describe() {
+        return "от " + threshold + " элементов, потоков: " + ForkJoinPool.getCommonPoolParallelism();
+    }
+}
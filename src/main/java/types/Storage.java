@@ -0,0 +1,34 @@
+package types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Способ хранения групп в памяти коллекцией {@link MusicBandCollection}.
+ */
+public enum Storage {
+    /**
+     * Объекты {@link MusicBand} в {@link ArrayList} с индексом по id.
+     */
+    OBJECTS,
+    /**
+     * Столбцы примитивов в куче ({@link BandColumns}).
+     */
+    COLUMNS,
+    /**
+     * Записи фиксированной длины вне кучи ({@link OffHeapBands}).
+     */
+    OFF_HEAP;
+
+    // Пустой список групп для данного способа хранения
+    List<MusicBand> newList() {
+        switch (this) {
+            case COLUMNS:
+                return new BandColumns();
+            case OFF_HEAP:
+                return new OffHeapBands();
+            default:
+                return new ArrayList<>();
+        }
+    }
+}